@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Time to first successful request of the default and the fast-start image.
+# Needs docker; starts the postgres service of docker-compose.yml.
+# Results are appended to target/startup-benchmark.csv.
+#
+#   RUNS=5 scripts/startup-benchmark.sh
+set -euo pipefail
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+cd "$(dirname "$0")/.."
+
+docker compose up -d postgres
+docker build -q -t devices_api:default . >/dev/null
+docker build -q -t devices_api:faststart --target faststart . >/dev/null
+network=$(docker inspect -f '{{range $name, $_ := .NetworkSettings.Networks}}{{$name}}{{end}}' \
+    "$(docker compose ps -q postgres)")
+
+mkdir -p target
+results=target/startup-benchmark.csv
+[ -f "$results" ] || echo "timestamp,image,run,millis" > "$results"
+
+measure() {
+    local image=$1 start end cid
+    start=$(date +%s%N)
+    cid=$(docker run -d --rm --network "$network" -p "$PORT:8080" \
+        -e SPRING_DATASOURCE_URL=jdbc:postgresql://postgres:5432/devices_api \
+        -e SPRING_DATASOURCE_USERNAME=postgres -e SPRING_DATASOURCE_PASSWORD=postgres \
+        "$image")
+    until curl -fs -o /dev/null "http://localhost:$PORT/api/v1/devices/state/AVAILABLE"; do
+        sleep 0.02
+    done
+    end=$(date +%s%N)
+    docker stop -t 2 "$cid" >/dev/null
+    echo $(( (end - start) / 1000000 ))
+}
+
+for image in default faststart; do
+    for run in $(seq "$RUNS"); do
+        millis=$(measure "devices_api:$image")
+        echo "$image run $run: $millis ms to first successful request"
+        echo "$(date -Iseconds),$image,$run,$millis" >> "$results"
+    done
+done
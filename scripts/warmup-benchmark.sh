@@ -0,0 +1,87 @@
+#!/usr/bin/env bash
+# Time to readiness and latency during the first minute after readiness, with
+# and without the startup warm-up. Needs docker; starts the postgres service of
+# docker-compose.yml and imports DEVICES generated devices once.
+# Results are appended to target/warmup-benchmark.csv.
+#
+#   RUNS=3 DEVICES=100000 scripts/warmup-benchmark.sh
+set -euo pipefail
+
+RUNS=${RUNS:-3}
+DEVICES=${DEVICES:-100000}
+SECONDS_MEASURED=${SECONDS_MEASURED:-60}
+PORT=${PORT:-18080}
+cd "$(dirname "$0")/.."
+
+docker compose up -d postgres
+docker build -q -t devices_api:default . >/dev/null
+network=$(docker inspect -f '{{range $name, $_ := .NetworkSettings.Networks}}{{$name}}{{end}}' \
+    "$(docker compose ps -q postgres)")
+
+mkdir -p target
+results=target/warmup-benchmark.csv
+[ -f "$results" ] || echo "timestamp,warmup,run,ready_millis,requests,p50_ms,p99_ms,max_ms" > "$results"
+
+start_app() {
+    docker run -d --rm --network "$network" -p "$PORT:8080" \
+        -e SPRING_DATASOURCE_URL=jdbc:postgresql://postgres:5432/devices_api \
+        -e SPRING_DATASOURCE_USERNAME=postgres -e SPRING_DATASOURCE_PASSWORD=postgres \
+        -e SPRING_JPA_SHOW_SQL=false -e DEVICES_WARMUP_ENABLED="$1" \
+        devices_api:default
+}
+
+wait_ready() {
+    until curl -fs -o /dev/null "http://localhost:$PORT/actuator/health/readiness"; do
+        sleep 0.05
+    done
+}
+
+# Seed once, with the warm-up off so the import is not measured
+cid=$(start_app false)
+wait_ready
+seeded=$(curl -fs "http://localhost:$PORT/api/v1/devices?ids=1" | grep -c '"found":\[{' || true)
+if [ "$seeded" = 0 ]; then
+    csv=$(mktemp)
+    echo "name,brand,state,creation_time" > "$csv"
+    for i in $(seq "$DEVICES"); do
+        echo "device-$i,brand-$((i % 50)),AVAILABLE,"
+    done >> "$csv"
+    curl -fs -o /dev/null -X POST -H 'Content-Type: text/csv' --data-binary @"$csv" \
+        "http://localhost:$PORT/api/v1/devices/import"
+    rm -f "$csv"
+fi
+docker stop -t 2 "$cid" >/dev/null
+
+measure() {
+    local warmup=$1 run=$2 start ready latencies end
+    latencies=$(mktemp)
+    start=$(date +%s%N)
+    cid=$(start_app "$warmup")
+    wait_ready
+    ready=$(( ($(date +%s%N) - start) / 1000000 ))
+
+    end=$(( $(date +%s) + SECONDS_MEASURED ))
+    while [ "$(date +%s)" -lt "$end" ]; do
+        id=$(( RANDOM % DEVICES + 1 ))
+        curl -s -o /dev/null -w '%{time_total}\n' "http://localhost:$PORT/api/v1/devices/$id" >> "$latencies"
+        curl -s -o /dev/null -w '%{time_total}\n' \
+            "http://localhost:$PORT/api/v1/devices/brand/brand-$((id % 50))/state/AVAILABLE" >> "$latencies"
+    done
+    docker stop -t 2 "$cid" >/dev/null
+
+    sort -n "$latencies" | awk -v ready="$ready" -v warmup="$warmup" -v run="$run" '
+        { v[NR] = $1 * 1000 }
+        END {
+            p50 = v[int(NR * 0.50) + 1]; p99 = v[int(NR * 0.99) + 1]
+            printf "%s,%s,%d,%d,%.1f,%.1f,%.1f\n", warmup, run, ready, NR, p50, p99, v[NR]
+        }'
+    rm -f "$latencies"
+}
+
+for warmup in false true; do
+    for run in $(seq "$RUNS"); do
+        line=$(measure "$warmup" "$run")
+        echo "warmup=$line"
+        echo "$(date -Iseconds),$line" >> "$results"
+    done
+done
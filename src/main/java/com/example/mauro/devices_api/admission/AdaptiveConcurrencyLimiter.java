@@ -0,0 +1,154 @@
+package com.example.mauro.devices_api.admission;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit adjusted with AIMD on the observed latency: requests that
+ * complete within the latency target while the limit is in use grow it by
+ * about one per round trip, a slower one shrinks it by the backoff ratio (at
+ * most once per latency target interval). Requests over the limit wait in a
+ * bounded queue for at most the configured time, and are rejected when the
+ * queue is full or the wait expires.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    // Fractional, so growing by 1/limit per fast request adds about one permit
+    // per round of limit requests
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long lastDecreaseNanos;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue,
+            Duration latencyTarget, double backoffRatio, Duration maxWait) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.lastDecreaseNanos = System.nanoTime() - latencyTargetNanos - 1;
+    }
+
+    /**
+     * Returns a permit, or null if the request must be rejected. Every permit
+     * must be released exactly once.
+     */
+    public Permit tryAcquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return new Permit(System.nanoTime());
+            }
+            if (queued >= maxQueue) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            queued++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        return null;
+                    }
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            return new Permit(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long startNanos) {
+        lock.lock();
+        try {
+            // Only grow when the limit is actually the constraint, otherwise an idle
+            // endpoint would ratchet its limit up to the maximum
+            boolean saturated = inFlight >= (int) limit / 2;
+            inFlight--;
+            long now = System.nanoTime();
+            long latency = now - startNanos;
+            if (latency > latencyTargetNanos) {
+                // A burst of slow completions is one congestion signal, not one per request
+                if (now - lastDecreaseNanos > latencyTargetNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Suggested Retry-After for rejected requests: roughly the time for the
+     * queue ahead to drain at the latency target.
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(latencyTargetNanos * Math.max(1, maxQueue)
+                / Math.max(1, getLimit())));
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void release() {
+            if (!released) {
+                released = true;
+                AdaptiveConcurrencyLimiter.this.release(startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mauro.devices_api.admission;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(AdmissionControlProperties.class)
+@ConditionalOnProperty(name = "devices.admission.enabled", matchIfMissing = true)
+public class AdmissionControlConfig {
+
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(AdmissionControlProperties properties,
+            @Value("${server.tomcat.threads.max:200}") int workerThreads, MeterRegistry meterRegistry) {
+        properties.checkFits(workerThreads);
+        Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(EndpointClass.class);
+        limiters.put(EndpointClass.POINT_READ, properties.getPointRead().newLimiter());
+        limiters.put(EndpointClass.LIST_SCAN, properties.getListScan().newLimiter());
+        limiters.put(EndpointClass.WRITE, properties.getWrite().newLimiter());
+
+        limiters.forEach((endpointClass, limiter) -> {
+            String tag = endpointClass.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("devices.admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .tag("endpoint", tag)
+                    .description("Current adaptive concurrency limit")
+                    .register(meterRegistry);
+            Gauge.builder("devices.admission.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .tag("endpoint", tag)
+                    .description("Requests currently admitted")
+                    .register(meterRegistry);
+            FunctionCounter.builder("devices.admission.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                    .tag("endpoint", tag)
+                    .description("Requests shed with 503")
+                    .register(meterRegistry);
+        });
+        return new AdmissionControlFilter(limiters);
+    }
+}
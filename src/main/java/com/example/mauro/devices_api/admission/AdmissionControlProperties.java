@@ -0,0 +1,80 @@
+package com.example.mauro.devices_api.admission;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Admitted and queued requests both hold a servlet worker thread, so the
+ * maximum limits and queues of the three classes together must fit in the
+ * worker pool (server.tomcat.threads.max, 200 by default); otherwise list
+ * scans could take every thread and leave point reads waiting for one. The
+ * defaults take 180 threads and leave the rest to requests that are not
+ * limited (actuator, API docs).
+ */
+@Data
+@ConfigurationProperties("devices.admission")
+public class AdmissionControlProperties {
+    private boolean enabled = true;
+    private Limits pointRead = new Limits(Duration.ofMillis(100), 80, 20);
+    private Limits listScan = new Limits(Duration.ofSeconds(1), 30, 10);
+    private Limits write = new Limits(Duration.ofMillis(250), 30, 10);
+
+    /**
+     * Fails if a class's limits are out of order, or if the endpoint classes
+     * together may hold more than workerThreads threads.
+     */
+    void checkFits(int workerThreads) {
+        pointRead.checkRange("point-read");
+        listScan.checkRange("list-scan");
+        write.checkRange("write");
+        int threads = pointRead.maxThreads() + listScan.maxThreads() + write.maxThreads();
+        if (threads > workerThreads) {
+            throw new IllegalStateException("devices.admission limits and queues add up to " + threads
+                    + " threads (point-read " + pointRead.maxThreads() + ", list-scan " + listScan.maxThreads()
+                    + ", write " + write.maxThreads() + "), more than the " + workerThreads
+                    + " worker threads of server.tomcat.threads.max");
+        }
+    }
+
+    @Data
+    public static class Limits {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 30;
+        private int maxQueue = 10;
+        // Completions slower than this shrink the limit
+        private Duration latencyTarget;
+        private double backoffRatio = 0.9;
+        private Duration maxWait = Duration.ofSeconds(1);
+
+        public Limits() {
+        }
+
+        public Limits(Duration latencyTarget, int maxLimit, int maxQueue) {
+            this.latencyTarget = latencyTarget;
+            this.maxLimit = maxLimit;
+            this.maxQueue = maxQueue;
+        }
+
+        // The limiter starts at initialLimit and only moves between minLimit and maxLimit
+        void checkRange(String endpointClass) {
+            if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+                throw new IllegalStateException("devices.admission." + endpointClass
+                        + " limits must satisfy 1 <= min-limit <= initial-limit <= max-limit, got min-limit "
+                        + minLimit + ", initial-limit " + initialLimit + ", max-limit " + maxLimit);
+            }
+        }
+
+        int maxThreads() {
+            return maxLimit + maxQueue;
+        }
+
+        AdaptiveConcurrencyLimiter newLimiter() {
+            return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, maxQueue, latencyTarget,
+                    backoffRatio, maxWait);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.mauro.devices_api.admission;
+
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Groups the device endpoints by cost, each group gets its own limiter so list
+ * scans can never take the capacity of point reads.
+ */
+public enum EndpointClass {
+    POINT_READ,
+    LIST_SCAN,
+    WRITE;
+
+    private static final String API_PREFIX = "/api/v1/devices";
+    private static final Pattern POINT_READ_PATH = Pattern.compile("/api/v1/devices/\\d+");
+    private static final String MULTI_GET_PATH = "/api/v1/devices/_mget";
+
+    /**
+     * Returns the class of the request, or null for requests outside the devices
+     * API (actuator, API docs), which are not limited.
+     */
+    public static EndpointClass of(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(API_PREFIX)) {
+            return null;
+        }
+        String method = request.getMethod();
+        if (MULTI_GET_PATH.equals(path)) {
+            return LIST_SCAN;
+        }
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return WRITE;
+        }
+        return POINT_READ_PATH.matcher(path).matches() ? POINT_READ : LIST_SCAN;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.mauro.devices_api.cli;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.example.mauro.devices_api.dto.DeviceImportResultDTO;
+import com.example.mauro.devices_api.service.DeviceImportService;
+
+/**
+ * Imports a CSV file at startup, e.g.
+ * {@code java -jar app.jar --devices.import.file=/data/fleet.csv}.
+ */
+@Component
+@ConditionalOnProperty(name = "devices.import.file")
+// Before the startup warm-up, which should run against the imported data
+@Order(0)
+public class DeviceImportRunner implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportRunner.class);
+
+    private final DeviceImportService deviceImportService;
+    private final Path file;
+
+    public DeviceImportRunner(DeviceImportService deviceImportService, @Value("${devices.import.file}") Path file) {
+        this.deviceImportService = deviceImportService;
+        this.file = file;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try (InputStream in = Files.newInputStream(file)) {
+            DeviceImportResultDTO result = deviceImportService.importCsv(in);
+            log.info("{}: {} rows read, {} imported, {} duplicates, {} rejected, {} rows/sec ({})",
+                    file, result.getRowsRead(), result.getImported(), result.getDuplicates(), result.getRejected(),
+                    result.getRowsPerSecond(), result.getLoadPath());
+        }
+    }
+}
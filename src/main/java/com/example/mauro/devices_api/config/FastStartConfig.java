@@ -0,0 +1,37 @@
+package com.example.mauro.devices_api.config;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Fast-start mode: springdoc beans are created on first use instead of during
+ * startup, nothing in the API depends on them.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("faststart")
+public class FastStartConfig {
+    private static final String SPRINGDOC_PACKAGE = "org.springdoc.";
+
+    @Bean
+    static BeanFactoryPostProcessor lazySpringdocBeans() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                String factoryBean = definition.getFactoryBeanName();
+                boolean springdoc = isSpringdoc(definition.getBeanClassName())
+                        || (factoryBean != null && beanFactory.containsBeanDefinition(factoryBean)
+                                && isSpringdoc(beanFactory.getBeanDefinition(factoryBean).getBeanClassName()));
+                if (springdoc) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    private static boolean isSpringdoc(String className) {
+        return className != null && className.startsWith(SPRINGDOC_PACKAGE);
+    }
+}
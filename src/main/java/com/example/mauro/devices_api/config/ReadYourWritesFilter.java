@@ -0,0 +1,55 @@
+package com.example.mauro.devices_api.config;
+
+import java.io.IOException;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Keeps the reads of a client (identified by the X-Client-Id header) on the
+ * primary for a while after that client wrote something.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final ReadYourWritesTracker tracker;
+
+    public ReadYourWritesFilter(ReadYourWritesTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        if (clientId == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean write = !isRead(request.getMethod());
+        if (write) {
+            // Recorded up front as well, the response may reach the client before the
+            // filter chain unwinds
+            tracker.recordWrite(clientId);
+        }
+        ReadWriteRoutingDataSource.forcePrimary(tracker.wroteRecently(clientId));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.forcePrimary(false);
+        }
+        if (write) {
+            // The window starts when the write completes
+            tracker.recordWrite(clientId);
+        }
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.mauro.devices_api.config;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers when each client last wrote, so its reads can be kept on the primary
+ * until the replicas are likely to have caught up.
+ */
+public class ReadYourWritesTracker {
+    // Expired entries are only purged once the map grows past this size
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+    private final ConcurrentHashMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void recordWrite(String clientId) {
+        long now = System.nanoTime();
+        lastWrites.put(clientId, now);
+        if (lastWrites.size() > PURGE_THRESHOLD) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt > windowNanos);
+        }
+    }
+
+    public boolean wroteRecently(String clientId) {
+        Long writtenAt = lastWrites.get(clientId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - writtenAt > windowNanos) {
+            lastWrites.remove(clientId, writtenAt);
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,7 +1,15 @@
 package com.example.mauro.devices_api.controller;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,11 +18,17 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.mauro.devices_api.dto.DeviceBatchDTO;
+import com.example.mauro.devices_api.dto.DeviceBatchRequestDTO;
 import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.dto.DeviceField;
 import com.example.mauro.devices_api.exception.ResourceAlreadyExistsException;
 import com.example.mauro.devices_api.exception.ResourceCannotBeDeletedException;
+import com.example.mauro.devices_api.exception.ResourceCannotBeMovedException;
+import com.example.mauro.devices_api.history.HistoryQueueFullException;
 import com.example.mauro.devices_api.model.Brand;
 import com.example.mauro.devices_api.model.Device;
 import com.example.mauro.devices_api.model.DeviceState;
@@ -30,6 +44,8 @@ import jakarta.validation.Valid;
 @RequestMapping("/api/v1/devices")
 @Tag(name = "Devices API", description = "API for managing devices")
 public class DeviceController {
+    static final int MAX_BATCH_SIZE = 1000;
+
     private final DeviceService deviceService;
 
     public DeviceController(DeviceService deviceService) {
@@ -45,6 +61,16 @@ public class DeviceController {
         return ResponseEntity.ok(deviceService.getAllDevices().stream().map(device -> device.convertToDTO()).toList());
     }
 
+    @Operation(summary = "Get all devices, selected fields only", description = "Retrieve all devices with only the given fields (comma separated: id, name, brand, state, creationTime)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+            @ApiResponse(responseCode = "400", description = "Unknown field")
+    })
+    @GetMapping(params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllDevices(@RequestParam String fields) {
+        return sparse(fields, deviceService::getAllDevices);
+    }
+
     @Operation(summary = "Get a device by ID", description = "Retrieves a device based on their unique ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Device found"),
@@ -58,10 +84,46 @@ public class DeviceController {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    @Operation(summary = "Get many devices by ID", description = "Retrieves the devices with the given IDs (comma separated) in one request")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Devices found and IDs missing"),
+            @ApiResponse(responseCode = "400", description = "More than " + MAX_BATCH_SIZE + " IDs")
+    })
+    @GetMapping(params = "ids")
+    public ResponseEntity<DeviceBatchDTO> getDevicesByIds(@RequestParam List<Long> ids) {
+        return getDeviceBatch(ids);
+    }
+
+    @Operation(summary = "Get many devices by ID", description = "Same as GET with ids, for ID lists too long for a URL")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Devices found and IDs missing"),
+            @ApiResponse(responseCode = "400", description = "No IDs or more than " + MAX_BATCH_SIZE + " IDs")
+    })
+    @PostMapping("/_mget")
+    public ResponseEntity<DeviceBatchDTO> multiGetDevices(@RequestBody DeviceBatchRequestDTO request) {
+        return getDeviceBatch(request.getIds());
+    }
+
+    private ResponseEntity<DeviceBatchDTO> getDeviceBatch(List<Long> ids) {
+        if (ids == null || ids.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        Set<Long> requested = ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Long, Device> devices = deviceService.getDevicesByIds(requested).stream()
+                .collect(Collectors.toMap(Device::getId, Function.identity()));
+
+        return ResponseEntity.ok(DeviceBatchDTO.builder()
+                .found(requested.stream().map(devices::get).filter(Objects::nonNull)
+                        .map(device -> device.convertToDTO()).toList())
+                .missing(requested.stream().filter(id -> !devices.containsKey(id)).toList())
+                .build());
+    }
+
     @Operation(summary = "Create a new device", description = "Creates a new device")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Created"),
-            @ApiResponse(responseCode = "400", description = "A device with the same name already")
+            @ApiResponse(responseCode = "400", description = "A device with the same name already"),
+            @ApiResponse(responseCode = "503", description = "State history is behind, retry later")
     })
     @PostMapping
     public ResponseEntity<DeviceDTO> createDevice(@RequestBody DeviceDTO deviceDTO) {
@@ -78,6 +140,8 @@ public class DeviceController {
             return ResponseEntity.ok(created.convertToDTO());
         } catch (ResourceAlreadyExistsException ex) {
             return ResponseEntity.badRequest().build();
+        } catch (HistoryQueueFullException ex) {
+            return historyBehind();
         }
     }
 
@@ -94,6 +158,17 @@ public class DeviceController {
         return ResponseEntity.ok(deviceDTOs);
     }
 
+    @Operation(summary = "Get devices by brand name, selected fields only", description = "Retrieves all devices from a given brand with only the given fields")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+            @ApiResponse(responseCode = "400", description = "Unknown field")
+    })
+    @GetMapping(value = "/brand/{brandName}", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getDevicesByBrandName(@PathVariable String brandName,
+            @RequestParam String fields) {
+        return sparse(fields, selected -> deviceService.getDevicesByBrand(brandName, selected));
+    }
+
     @Operation(summary = "Get devices by state", description = "Retrieves all devices with a given state")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Success"),
@@ -104,14 +179,62 @@ public class DeviceController {
                 .ok(deviceService.getDevicesByState(state).stream().map(device -> device.convertToDTO()).toList());
     }
 
+    @Operation(summary = "Get devices by brand name and state", description = "Retrieves all devices from a given brand with a given state")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+    })
+    @GetMapping("/brand/{brandName}/state/{state}")
+    public ResponseEntity<List<DeviceDTO>> getDevicesByBrandNameAndState(@PathVariable String brandName,
+            @PathVariable DeviceState state) {
+        return ResponseEntity.ok(deviceService.getDevicesByBrandAndState(brandName, state).stream()
+                .map(device -> device.convertToDTO()).toList());
+    }
+
+    @Operation(summary = "Get devices by state, selected fields only", description = "Retrieves all devices with a given state with only the given fields")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+            @ApiResponse(responseCode = "400", description = "Unknown field")
+    })
+    @GetMapping(value = "/state/{state}", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getDevicesByState(@PathVariable DeviceState state,
+            @RequestParam String fields) {
+        return sparse(fields, selected -> deviceService.getDevicesByState(state, selected));
+    }
+
+    // Only the requested columns are selected, so the rows are returned as they
+    // come instead of going through DeviceDTO
+    private ResponseEntity<List<Map<String, Object>>> sparse(String fields,
+            Function<Set<DeviceField>, List<Map<String, Object>>> query) {
+        Set<DeviceField> selected;
+        try {
+            selected = DeviceField.parse(fields);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(query.apply(selected));
+    }
+
     @Operation(summary = "Update a device by id", description = "Fully and/or partially update an existing device")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully updated"),
+            @ApiResponse(responseCode = "400", description = "The new brand is stored on another shard"),
+            @ApiResponse(responseCode = "503", description = "State history is behind, retry later")
     })
     @PutMapping("/{id}")
     public ResponseEntity<DeviceDTO> updateDevice(@PathVariable Long id, @Valid @RequestBody DeviceDTO deviceDTO) {
-        Device updated = deviceService.updateDevice(id, deviceDTO);
-        return ResponseEntity.ok(updated.convertToDTO());
+        try {
+            Device updated = deviceService.updateDevice(id, deviceDTO);
+            return ResponseEntity.ok(updated.convertToDTO());
+        } catch (ResourceCannotBeMovedException ex) {
+            return ResponseEntity.badRequest().build();
+        } catch (HistoryQueueFullException ex) {
+            return historyBehind();
+        }
+    }
+
+    // The write was rolled back, the history writer needs a moment to catch up
+    private static <T> ResponseEntity<T> historyBehind() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
     }
 
     @Operation(summary = "Delete a device by id", description = "Delete a device by id")
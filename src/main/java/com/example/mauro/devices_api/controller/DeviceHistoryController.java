@@ -0,0 +1,53 @@
+package com.example.mauro.devices_api.controller;
+
+import java.util.List;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.mauro.devices_api.dto.DeviceHistoryDTO;
+import com.example.mauro.devices_api.model.DeviceStateTransition;
+import com.example.mauro.devices_api.service.DeviceService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/devices")
+@Tag(name = "Devices API", description = "API for managing devices")
+public class DeviceHistoryController {
+    static final int MAX_LIMIT = 500;
+
+    private final DeviceService deviceService;
+
+    public DeviceHistoryController(DeviceService deviceService) {
+        this.deviceService = deviceService;
+    }
+
+    @Operation(summary = "Get the state history of a device", description = "Retrieves the state changes of a device, newest first, one page at a time; pass nextBefore as before to get the next page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+            @ApiResponse(responseCode = "400", description = "Limit outside 1 to 500")
+    })
+    @GetMapping("/{id}/history")
+    public ResponseEntity<DeviceHistoryDTO> getStateHistory(@PathVariable Long id,
+            @RequestParam(required = false) Long before, @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        // One row more than the page tells whether there is a next one
+        List<DeviceStateTransition> transitions = deviceService.getStateHistory(id, before, limit + 1);
+        boolean more = transitions.size() > limit;
+        List<DeviceStateTransition> page = more ? transitions.subList(0, limit) : transitions;
+        return ResponseEntity.ok(DeviceHistoryDTO.builder()
+                .transitions(page.stream().map(DeviceStateTransition::convertToDTO).toList())
+                .nextBefore(more ? page.get(page.size() - 1).getId() : null)
+                .build());
+    }
+}
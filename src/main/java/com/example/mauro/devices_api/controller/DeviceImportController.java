@@ -0,0 +1,48 @@
+package com.example.mauro.devices_api.controller;
+
+import java.io.InputStream;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.mauro.devices_api.dto.DeviceImportResultDTO;
+import com.example.mauro.devices_api.exception.ImportNotAvailableException;
+import com.example.mauro.devices_api.service.DeviceImportService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/devices")
+@Tag(name = "Devices API", description = "API for managing devices")
+public class DeviceImportController {
+    private final DeviceImportService deviceImportService;
+
+    public DeviceImportController(DeviceImportService deviceImportService) {
+        this.deviceImportService = deviceImportService;
+    }
+
+    @Operation(summary = "Import devices from CSV", description = "Bulk imports devices from a CSV body with the columns name,brand,state,creation_time")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Imported, duplicates and rejected rows are reported"),
+            @ApiResponse(responseCode = "400", description = "The CSV could not be parsed"),
+            @ApiResponse(responseCode = "501", description = "Not available with sharding")
+    })
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<DeviceImportResultDTO> importDevices(InputStream csv) {
+        // The raw request body is streamed to the database, it is never held in memory
+        try {
+            return ResponseEntity.ok(deviceImportService.importCsv(csv));
+        } catch (DataAccessException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        } catch (ImportNotAvailableException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        }
+    }
+}
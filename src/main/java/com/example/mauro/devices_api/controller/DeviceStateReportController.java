@@ -0,0 +1,41 @@
+package com.example.mauro.devices_api.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.mauro.devices_api.dto.DeviceStateReportDTO;
+import com.example.mauro.devices_api.service.DeviceService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/devices")
+@Tag(name = "Devices API", description = "API for managing devices")
+public class DeviceStateReportController {
+    private final DeviceService deviceService;
+
+    public DeviceStateReportController(DeviceService deviceService) {
+        this.deviceService = deviceService;
+    }
+
+    @Operation(summary = "Report the state of a device", description = "Records the state reported by a device agent, it is written to the database in batches")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Accepted"),
+            @ApiResponse(responseCode = "400", description = "State missing")
+    })
+    @PostMapping("/{id}/state-report")
+    public ResponseEntity<Void> reportState(@PathVariable Long id, @RequestBody DeviceStateReportDTO report) {
+        if (report.getState() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        deviceService.reportState(id, report.getState());
+        return ResponseEntity.accepted().build();
+    }
+}
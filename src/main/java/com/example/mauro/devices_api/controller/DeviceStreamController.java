@@ -0,0 +1,66 @@
+package com.example.mauro.devices_api.controller;
+
+import java.io.IOException;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.service.DeviceJsonStreamer;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Streaming variants of the device listings for large responses. The body is
+ * the same JSON array as the regular listings, written row by row while the
+ * query runs.
+ */
+@RestController
+@RequestMapping("/api/v1/devices/stream")
+@Tag(name = "Devices API", description = "API for managing devices")
+public class DeviceStreamController {
+    private final DeviceJsonStreamer deviceJsonStreamer;
+
+    public DeviceStreamController(DeviceJsonStreamer deviceJsonStreamer) {
+        this.deviceJsonStreamer = deviceJsonStreamer;
+    }
+
+    @Operation(summary = "Stream all devices", description = "Streams all devices as they are read from the database")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+    })
+    @GetMapping
+    public void streamAllDevices(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        deviceJsonStreamer.writeAll(response.getOutputStream());
+    }
+
+    @Operation(summary = "Stream devices by brand name", description = "Streams all devices from a given brand")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+    })
+    @GetMapping("/brand/{brandName}")
+    public void streamDevicesByBrandName(@PathVariable String brandName, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        deviceJsonStreamer.writeByBrand(brandName, response.getOutputStream());
+    }
+
+    @Operation(summary = "Stream devices by state", description = "Streams all devices with a given state")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Success"),
+    })
+    @GetMapping("/state/{state}")
+    public void streamDevicesByState(@PathVariable DeviceState state, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        deviceJsonStreamer.writeByState(state, response.getOutputStream());
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.mauro.devices_api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceBatchDTO {
+    private List<DeviceDTO> found;
+    private List<Long> missing;
+}
@@ -0,0 +1,14 @@
+package com.example.mauro.devices_api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceBatchRequestDTO {
+    private List<Long> ids;
+}
@@ -0,0 +1,49 @@
+package com.example.mauro.devices_api.dto;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The fields of {@link DeviceDTO} that can be requested with {@code fields=}
+ * on the listing endpoints.
+ */
+public enum DeviceField {
+    ID("id"),
+    NAME("name"),
+    BRAND("brand"),
+    STATE("state"),
+    CREATION_TIME("creationTime");
+
+    private final String jsonName;
+
+    DeviceField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Parses a comma separated list such as {@code id,name,state}. Unknown
+     * names are rejected with IllegalArgumentException.
+     */
+    public static Set<DeviceField> parse(String fields) {
+        Set<DeviceField> parsed = EnumSet.noneOf(DeviceField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            parsed.add(Arrays.stream(values())
+                    .filter(field -> field.jsonName.equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown device field: " + trimmed)));
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("No device fields requested");
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.mauro.devices_api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceHistoryDTO {
+    // Newest first
+    private List<DeviceStateTransitionDTO> transitions;
+    // Value of the before parameter for the next (older) page, null on the last page
+    private Long nextBefore;
+}
@@ -0,0 +1,27 @@
+package com.example.mauro.devices_api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceImportResultDTO {
+    // "copy" when the rows were streamed through the PostgreSQL COPY protocol,
+    // "batch" when they were inserted with JDBC batches
+    private String loadPath;
+    private long rowsRead;
+    private long imported;
+    private long brandsCreated;
+    private long rejected;
+    private long duplicates;
+    // Only the first names are reported, so the response size does not grow with the file
+    private List<String> duplicateNames;
+    private long elapsedMillis;
+    private long rowsPerSecond;
+}
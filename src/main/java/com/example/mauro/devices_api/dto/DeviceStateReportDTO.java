@@ -0,0 +1,14 @@
+package com.example.mauro.devices_api.dto;
+
+import com.example.mauro.devices_api.model.DeviceState;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceStateReportDTO {
+    private DeviceState state;
+}
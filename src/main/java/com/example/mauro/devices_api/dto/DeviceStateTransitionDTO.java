@@ -0,0 +1,22 @@
+package com.example.mauro.devices_api.dto;
+
+import java.time.LocalDateTime;
+
+import com.example.mauro.devices_api.model.DeviceState;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceStateTransitionDTO {
+    private Long id;
+    private DeviceState fromState;
+    private DeviceState toState;
+    private String actor;
+    private LocalDateTime changedAt;
+}
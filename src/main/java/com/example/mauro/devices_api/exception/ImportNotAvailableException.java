@@ -0,0 +1,7 @@
+package com.example.mauro.devices_api.exception;
+
+public class ImportNotAvailableException extends RuntimeException {
+    public ImportNotAvailableException(String message) {
+        super(message);
+    }
+}
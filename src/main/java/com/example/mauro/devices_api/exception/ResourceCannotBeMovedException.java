@@ -0,0 +1,7 @@
+package com.example.mauro.devices_api.exception;
+
+public class ResourceCannotBeMovedException extends RuntimeException {
+    public ResourceCannotBeMovedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.mauro.devices_api.history;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.mauro.devices_api.config.ReadYourWritesFilter;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.example.mauro.devices_api.sharding.ShardContext;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Audit trail of device state changes (device, from, to, actor, time), written
+ * off the request path.
+ *
+ * Transitions recorded in a transaction are held by the transaction until it
+ * commits. Before commit they reserve room in the bounded queue, waiting up to
+ * devices.history.max-wait when the writer is behind and failing the
+ * transaction (HistoryQueueFullException) after that, so a state change is
+ * never committed without its history. After commit they are appended to a
+ * lock-free queue, which a background thread drains into batched inserts.
+ * Room is only given back once the rows are written: while the database cannot
+ * be reached (no connection, no transaction) the batch is retried every flush
+ * interval and the bound holds new changes back. A batch the database rejects
+ * (a non-transient error such as a constraint violation) would fail the same
+ * way forever, so it is logged and dropped instead. The queue is written out
+ * on shutdown.
+ */
+public class DeviceStateHistory implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(DeviceStateHistory.class);
+
+    public static final String SYSTEM_ACTOR = "system";
+
+    static final int MAX_ACTOR_LENGTH = 255;
+
+    private static final String INSERT = "INSERT INTO device_state_history"
+            + " (device_id, from_state, to_state, actor, changed_at) VALUES (?, ?, ?, ?, ?)";
+
+    // Upper bound of a single wait for room, the writer may free it any time
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    record Transition(long deviceId, DeviceState from, DeviceState to, String actor, LocalDateTime changedAt) {
+    }
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long maxWaitNanos;
+    private final long shutdownTimeoutMillis;
+
+    private final ConcurrentLinkedQueue<Transition> queue = new ConcurrentLinkedQueue<>();
+    // Reserved by committing transactions, queued, or being written
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final DeviceShards shards;
+    private final Thread writer;
+    private volatile boolean stopping;
+
+    public DeviceStateHistory(HistoryProperties properties, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager, DeviceShards shards, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.capacity = properties.getCapacity();
+        this.batchSize = properties.getBatchSize();
+        this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+        this.maxWaitNanos = properties.getMaxWait().toNanos();
+        this.shutdownTimeoutMillis = properties.getShutdownTimeout().toMillis();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.shards = shards;
+
+        FunctionCounter.builder("devices.history.recorded", recorded, LongAdder::sum)
+                .description("State transitions committed and queued for the history")
+                .register(meterRegistry);
+        FunctionCounter.builder("devices.history.written", written, LongAdder::sum)
+                .description("State transitions written to the history")
+                .register(meterRegistry);
+        FunctionCounter.builder("devices.history.rejected", rejected, LongAdder::sum)
+                .description("Transactions failed because the history queue was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("devices.history.dropped", dropped, LongAdder::sum)
+                .description("State transitions dropped because the database rejected them")
+                .register(meterRegistry);
+        Gauge.builder("devices.history.queued", reserved, AtomicInteger::get)
+                .description("State transitions not written yet")
+                .register(meterRegistry);
+
+        if (enabled) {
+            writer = Thread.ofPlatform().name("device-history-writer").daemon(true).start(this::writeLoop);
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * Records a state change made by the current transaction, by the client of
+     * the current request (X-Client-Id header) or SYSTEM_ACTOR. It is queued if
+     * and when the transaction commits.
+     */
+    public void recordAfterCommit(long deviceId, DeviceState from, DeviceState to) {
+        recordAfterCommit(deviceId, from, to, currentActor());
+    }
+
+    public void recordAfterCommit(long deviceId, DeviceState from, DeviceState to, String actor) {
+        if (!enabled || to == null || to == from) {
+            return;
+        }
+        Transition transition = new Transition(deviceId, from, to, actor, null);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Nothing to wait for
+            reserveOrThrow(1);
+            publish(List.of(transition));
+            return;
+        }
+        pendingTransitions().transitions.add(transition);
+    }
+
+    /** State transitions recorded and not written yet. */
+    public int queued() {
+        return reserved.get();
+    }
+
+    /**
+     * Waits until everything recorded so far is written or the timeout expires,
+     * returns whether the queue was written out.
+     */
+    public boolean awaitWritten(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (reserved.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(MAX_PARK_NANOS);
+        }
+        return true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** The client of the current request (X-Client-Id header), or SYSTEM_ACTOR. */
+    public static String currentActor() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            String clientId = attributes.getRequest().getHeader(ReadYourWritesFilter.CLIENT_ID_HEADER);
+            if (clientId != null && !clientId.isBlank()) {
+                return clientId.length() > MAX_ACTOR_LENGTH ? clientId.substring(0, MAX_ACTOR_LENGTH) : clientId;
+            }
+        }
+        return SYSTEM_ACTOR;
+    }
+
+    // The synchronization of the current transaction, looked up among the
+    // registered ones so a REQUIRES_NEW transaction gets its own
+    private PendingTransitions pendingTransitions() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingTransitions pending && pending.owner() == this) {
+                return pending;
+            }
+        }
+        PendingTransitions pending = new PendingTransitions();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending;
+    }
+
+    private void reserveOrThrow(int count) {
+        if (!reserve(count)) {
+            rejected.increment();
+            throw new HistoryQueueFullException("State history queue full (" + capacity + " transitions)");
+        }
+    }
+
+    /**
+     * Takes room for count transitions, parking in short steps while the
+     * writer makes room, up to maxWait. A single transaction larger than the
+     * whole queue gets in when the queue is empty.
+     */
+    boolean reserve(int count) {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            int used = reserved.get();
+            if (used + count <= capacity || used == 0) {
+                if (reserved.compareAndSet(used, used + count)) {
+                    return true;
+                }
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+        }
+    }
+
+    private void publish(List<Transition> transitions) {
+        LocalDateTime committedAt = LocalDateTime.now();
+        for (Transition transition : transitions) {
+            queue.add(new Transition(transition.deviceId(), transition.from(), transition.to(), transition.actor(),
+                    committedAt));
+        }
+        recorded.add(transitions.size());
+        if (reserved.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void writeLoop() {
+        // Transitions taken from the queue and not written yet, per shard (a
+        // single entry without sharding); kept across failed attempts
+        NavigableMap<Integer, List<Object[]>> batch = new TreeMap<>();
+        while (true) {
+            try {
+                if (batch.isEmpty() && !drain(batch)) {
+                    if (stopping) {
+                        return;
+                    }
+                    LockSupport.parkNanos(flushIntervalNanos);
+                    continue;
+                }
+                writeBatch(batch);
+            } catch (RuntimeException ex) {
+                if (isRejected(ex)) {
+                    // Shards are written in order, the first one left failed
+                    List<Object[]> rows = batch.pollFirstEntry().getValue();
+                    dropped.add(rows.size());
+                    reserved.addAndGet(-rows.size());
+                    log.error("Dropping {} state transitions rejected by the database", rows.size(), ex);
+                    continue;
+                }
+                if (stopping) {
+                    log.error("Dropping {} state transitions, the history cannot be written: {}",
+                            reserved.get(), ex.getMessage());
+                    return;
+                }
+                // Retried with the same rows; meanwhile writes wait for room or fail
+                log.warn("State history write failed: {}", ex.getMessage());
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    // Whether retrying the same rows would fail the same way. Resource failures
+    // (database down, connection refused) are non-transient for the statement
+    // but not for the rows, so they are retried.
+    private static boolean isRejected(RuntimeException ex) {
+        return ex instanceof NonTransientDataAccessException
+                && !(ex instanceof NonTransientDataAccessResourceException);
+    }
+
+    private boolean drain(Map<Integer, List<Object[]>> batch) {
+        int count = 0;
+        Transition transition;
+        while (count < batchSize && (transition = queue.poll()) != null) {
+            batch.computeIfAbsent(shards.shardOfId(transition.deviceId()), shard -> new ArrayList<>())
+                    .add(new Object[] {
+                            transition.deviceId(),
+                            transition.from() == null ? null : transition.from().name(),
+                            transition.to().name(),
+                            transition.actor(),
+                            Timestamp.valueOf(transition.changedAt()) });
+            count++;
+        }
+        return count > 0;
+    }
+
+    // Each shard's rows are removed from the batch once they are committed, so a
+    // retry after a failure does not write them twice
+    private void writeBatch(Map<Integer, List<Object[]>> batch) {
+        Iterator<Map.Entry<Integer, List<Object[]>>> shardRows = batch.entrySet().iterator();
+        while (shardRows.hasNext()) {
+            Map.Entry<Integer, List<Object[]>> entry = shardRows.next();
+            List<Object[]> rows = entry.getValue();
+            try (ShardContext.Scope scope = shards.forShard(entry.getKey())) {
+                transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, rows));
+            }
+            shardRows.remove();
+            written.add(rows.size());
+            reserved.addAndGet(-rows.size());
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        stopping = true;
+        LockSupport.unpark(writer);
+        writer.join(shutdownTimeoutMillis);
+        if (writer.isAlive()) {
+            log.error("State history not written out within {} ms, {} transitions pending", shutdownTimeoutMillis,
+                    reserved.get());
+        }
+    }
+
+    private final class PendingTransitions implements TransactionSynchronization {
+        private final List<Transition> transitions = new ArrayList<>();
+        private boolean reservedRoom;
+
+        DeviceStateHistory owner() {
+            return DeviceStateHistory.this;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!transitions.isEmpty()) {
+                reserveOrThrow(transitions.size());
+                reservedRoom = true;
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (reservedRoom) {
+                publish(transitions);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (reservedRoom && status != STATUS_COMMITTED) {
+                reserved.addAndGet(-transitions.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.mauro.devices_api.history;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.mauro.devices_api.sharding.DeviceShards;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * State history, on by default; devices.history.enabled=false keeps the bean
+ * but records nothing.
+ */
+@Configuration
+@EnableConfigurationProperties(HistoryProperties.class)
+public class HistoryConfig {
+
+    @Bean
+    public DeviceStateHistory deviceStateHistory(HistoryProperties properties, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager, DeviceShards shards, MeterRegistry meterRegistry) {
+        return new DeviceStateHistory(properties, jdbcTemplate, transactionManager, shards, meterRegistry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.mauro.devices_api.history;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties("devices.history")
+public class HistoryProperties {
+    private boolean enabled = true;
+    // Transitions recorded and not written yet; writes wait for room beyond that
+    private int capacity = 10000;
+    // Rows per batched insert, a full batch wakes the writer early
+    private int batchSize = 500;
+    private Duration flushInterval = Duration.ofMillis(200);
+    // How long a write waits for room in the queue before it fails with 503
+    private Duration maxWait = Duration.ofSeconds(1);
+    // How long shutdown waits for the queue to be written
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+}
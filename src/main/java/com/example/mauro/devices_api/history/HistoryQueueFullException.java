@@ -0,0 +1,12 @@
+package com.example.mauro.devices_api.history;
+
+/**
+ * The history writer is behind and the queue had no room within
+ * devices.history.max-wait. Thrown before commit, so the write that changed
+ * the state is rolled back.
+ */
+public class HistoryQueueFullException extends RuntimeException {
+    public HistoryQueueFullException(String message) {
+        super(message);
+    }
+}
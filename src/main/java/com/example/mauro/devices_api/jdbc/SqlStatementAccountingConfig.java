@@ -0,0 +1,61 @@
+package com.example.mauro.devices_api.jdbc;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+@Configuration
+@ConditionalOnProperty(name = "devices.sql.accounting.enabled", matchIfMissing = true)
+public class SqlStatementAccountingConfig {
+
+    // Only the data source the application uses is wrapped; with read replicas it
+    // is the routing proxy, so the primary and replica pools are not counted twice.
+    // Counting rows read proxies every ResultSet and intercepts each call on it
+    // reflectively, which costs an allocation per call on large listings, so it
+    // is only done with devices.sql.count-rows=true.
+    @Bean
+    public static BeanPostProcessor sqlStatementCountingDataSource(ObjectProvider<SqlStatementListener> listener,
+            Environment environment) {
+        boolean countRows = environment.getProperty("devices.sql.count-rows", Boolean.class, false);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                SqlStatementListener statementListener = listener.getObject();
+                ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create(dataSource)
+                        .name(beanName)
+                        .listener(statementListener);
+                if (countRows) {
+                    builder.methodListener(statementListener).proxyResultSet();
+                }
+                return builder.build();
+            }
+        };
+    }
+
+    @Bean
+    public SqlStatementListener sqlStatementListener(
+            @Value("${devices.sql.slow-query-threshold:500ms}") Duration slowQueryThreshold) {
+        return new SqlStatementListener(slowQueryThreshold);
+    }
+
+    @Bean
+    public SqlStatementFilter sqlStatementFilter(MeterRegistry meterRegistry,
+            @Value("${devices.sql.debug-header:false}") boolean debugHeader,
+            @Value("${devices.sql.count-rows:false}") boolean countRows) {
+        return new SqlStatementFilter(meterRegistry, debugHeader, countRows);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mauro.devices_api.jdbc;
+
+import java.io.IOException;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Counts the JDBC statements and rows of each request and records them in the
+ * {@code devices.sql.statements} and {@code devices.sql.rows} summaries, tagged
+ * by method and URI pattern. With the debug header enabled the counts are also
+ * returned in {@code X-SQL-Statements} and {@code X-SQL-Rows}; the body is then
+ * buffered so the headers can be set after the handler has run, except for the
+ * streaming listings, which would lose their flat memory use and get no
+ * headers instead. Rows are only
+ * counted, and only published, when the rows read are (devices.sql.count-rows):
+ * the update counts alone would report 0 for every read.
+ */
+public class SqlStatementFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+    public static final String ROWS_HEADER = "X-SQL-Rows";
+
+    private static final String STREAM_PATH = "/api/v1/devices/stream";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean debugHeader;
+    private final boolean countRows;
+
+    public SqlStatementFilter(MeterRegistry meterRegistry, boolean debugHeader, boolean countRows) {
+        this.meterRegistry = meterRegistry;
+        this.debugHeader = debugHeader;
+        this.countRows = countRows;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper buffered = debugHeader && !isStreaming(request)
+                ? new ContentCachingResponseWrapper(response)
+                : null;
+        SqlStatementStats stats = SqlStatementStats.start();
+        try {
+            chain.doFilter(request, buffered != null ? buffered : response);
+        } finally {
+            SqlStatementStats.clear();
+            record(request, stats);
+            if (buffered != null) {
+                buffered.setHeader(STATEMENTS_HEADER, Integer.toString(stats.getStatements()));
+                if (countRows) {
+                    buffered.setHeader(ROWS_HEADER, Long.toString(stats.getRows()));
+                }
+                buffered.copyBodyToResponse();
+            }
+        }
+    }
+
+    private static boolean isStreaming(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + STREAM_PATH);
+    }
+
+    private void record(HttpServletRequest request, SqlStatementStats stats) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("devices.sql.statements")
+                .description("JDBC statements per request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        if (!countRows) {
+            return;
+        }
+        DistributionSummary.builder("devices.sql.rows")
+                .description("Rows read or written per request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(stats.getRows());
+    }
+}
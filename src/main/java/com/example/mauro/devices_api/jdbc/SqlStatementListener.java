@@ -0,0 +1,87 @@
+package com.example.mauro.devices_api.jdbc;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+/**
+ * Records every statement executed through the proxied data source into the
+ * {@link SqlStatementStats} of the current request and logs statements slower
+ * than the threshold. Rows are the update counts, plus those read through
+ * ResultSet.next() when the result sets are proxied (devices.sql.count-rows);
+ * bind parameter values are never logged, only their count.
+ */
+public class SqlStatementListener implements QueryExecutionListener, MethodExecutionListener {
+    private static final Logger log = LoggerFactory.getLogger(SqlStatementListener.class);
+
+    private final long slowQueryThresholdMillis;
+
+    public SqlStatementListener(Duration slowQueryThreshold) {
+        this.slowQueryThresholdMillis = slowQueryThreshold.toMillis();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long elapsedMillis = execInfo.getElapsedTime();
+        SqlStatementStats stats = SqlStatementStats.current();
+        if (stats != null) {
+            stats.statementExecuted(elapsedMillis, rowsWritten(execInfo.getResult()));
+        }
+        if (elapsedMillis >= slowQueryThresholdMillis) {
+            for (QueryInfo query : queryInfoList) {
+                int parameters = query.getParametersList().stream().mapToInt(List::size).sum();
+                log.warn("Slow query ({} ms, {} bind parameters, {} batch entries): {}", elapsedMillis, parameters,
+                        query.getParametersList().size(), query.getQuery());
+            }
+        }
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (executionContext.getTarget() instanceof ResultSet
+                && "next".equals(executionContext.getMethod().getName())
+                && Boolean.TRUE.equals(executionContext.getResult())) {
+            SqlStatementStats stats = SqlStatementStats.current();
+            if (stats != null) {
+                stats.rowRead();
+            }
+        }
+    }
+
+    private static long rowsWritten(Object result) {
+        if (result instanceof Integer count) {
+            return Math.max(count, 0);
+        }
+        if (result instanceof Long count) {
+            return Math.max(count, 0);
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mauro.devices_api.jdbc;
+
+/**
+ * JDBC statements executed and rows read or written on the current thread
+ * since {@link #start()}. The HTTP request filter starts and clears it, so
+ * statements outside a request (scheduled flushes, startup) are not counted.
+ */
+public final class SqlStatementStats {
+    private static final ThreadLocal<SqlStatementStats> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private long rows;
+    private long elapsedMillis;
+
+    private SqlStatementStats() {
+    }
+
+    public static SqlStatementStats start() {
+        SqlStatementStats stats = new SqlStatementStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * The stats of the current request, or null outside a request.
+     */
+    public static SqlStatementStats current() {
+        return CURRENT.get();
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    void statementExecuted(long elapsedMillis, long rowsWritten) {
+        statements++;
+        this.elapsedMillis += elapsedMillis;
+        rows += rowsWritten;
+    }
+
+    void rowRead() {
+        rows++;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -3,6 +3,10 @@ package com.example.mauro.devices_api.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -14,15 +18,22 @@ import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table(name = "brands")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Brand.CACHE_REGION)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Brand {
+    public static final String CACHE_REGION = "brands";
+    public static final String BY_NAME_QUERY_REGION = "brands-by-name";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -30,7 +41,11 @@ public class Brand {
     @Column(nullable = false, unique = true)
     private String name;
 
+    // Excluded from toString/equals/hashCode, which would otherwise load the
+    // whole collection (one select per brand) and recurse through Device.brand
     @Builder.Default
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @OneToMany(mappedBy = "brand", cascade = CascadeType.ALL)
     private List<Device> devices = new ArrayList<>();
 }
\ No newline at end of file
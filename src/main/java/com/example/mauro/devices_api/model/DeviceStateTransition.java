@@ -0,0 +1,64 @@
+package com.example.mauro.devices_api.model;
+
+import java.time.LocalDateTime;
+
+import com.example.mauro.devices_api.dto.DeviceStateTransitionDTO;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One state change of a device. Rows are only inserted, in batches, by
+ * DeviceStateHistory; no foreign key to devices, the history outlives deleted
+ * devices.
+ */
+@Entity
+@Table(name = "device_state_history",
+        indexes = @Index(name = "device_state_history_device_id_idx", columnList = "device_id, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceStateTransition {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false)
+    private Long deviceId;
+
+    // Null for the state a device was created with
+    @Enumerated(EnumType.STRING)
+    private DeviceState fromState;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private DeviceState toState;
+
+    @Column(nullable = false)
+    private String actor;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    public DeviceStateTransitionDTO convertToDTO() {
+        return DeviceStateTransitionDTO.builder()
+                .id(getId())
+                .fromState(getFromState())
+                .toState(getToState())
+                .actor(getActor())
+                .changedAt(getChangedAt())
+                .build();
+    }
+}
@@ -1,9 +1,21 @@
 package com.example.mauro.devices_api.repository;
 
 import com.example.mauro.devices_api.model.Brand;
+
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
 import java.util.Optional;
 
 public interface BrandRepository extends JpaRepository<Brand, Long> {
+    // Served from the query cache when hibernate.cache.use_query_cache is on,
+    // Hibernate invalidates it on every write to brands
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Brand.BY_NAME_QUERY_REGION)
+    })
     Optional<Brand> findByName(String name);
 }
\ No newline at end of file
@@ -3,13 +3,35 @@ package com.example.mauro.devices_api.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 
 import com.example.mauro.devices_api.model.Device;
 import com.example.mauro.devices_api.model.DeviceState;
 
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+import jakarta.persistence.LockModeType;
+
+public interface DeviceRepository extends JpaRepository<Device, Long>, DeviceRepositoryCustom {
     Optional<Device> findByName(String name);
+
+    // The listings fetch the brand in the same select; a plain query would load
+    // each distinct brand with a select of its own
+    @Override
+    @EntityGraph(attributePaths = "brand")
+    List<Device> findAll();
+
+    @EntityGraph(attributePaths = "brand")
     List<Device> findByBrandName(String brandName);
+
+    @EntityGraph(attributePaths = "brand")
     List<Device> findByState(DeviceState stateName);
+
+    @EntityGraph(attributePaths = "brand")
+    List<Device> findByBrandNameAndState(String brandName, DeviceState state);
+
+    // SELECT ... FOR UPDATE, so a state check and the write that depends on it
+    // cannot interleave with another request on the same device
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Device> findWithLockById(Long id);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.example.mauro.devices_api.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.mauro.devices_api.dto.DeviceField;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+
+public interface DeviceRepositoryCustom {
+    /**
+     * Loads the devices with the given ids, missing ids are skipped. Devices
+     * already in the persistence context or the second-level cache are taken
+     * from there, the rest is loaded with a single {@code id = ANY(?)} query.
+     */
+    List<Device> findAllByIdIn(Collection<Long> ids);
+
+    /**
+     * Selects only the columns of the requested fields, keyed by their JSON
+     * name. {@code brands} is joined only when the brand is requested or
+     * filtered on. A null filter matches all devices.
+     */
+    List<Map<String, Object>> findFields(Set<DeviceField> fields, DeviceState state, String brandName);
+}
@@ -0,0 +1,79 @@
+package com.example.mauro.devices_api.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Session;
+
+import com.example.mauro.devices_api.dto.DeviceField;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+public class DeviceRepositoryCustomImpl implements DeviceRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Device> findAllByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return entityManager.unwrap(Session.class)
+                .byMultipleIds(Device.class)
+                .enableOrderedReturn(false)
+                .multiLoad(new ArrayList<>(ids));
+    }
+
+    @Override
+    public List<Map<String, Object>> findFields(Set<DeviceField> fields, DeviceState state, String brandName) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Device> device = query.from(Device.class);
+        Join<Device, Brand> brand = fields.contains(DeviceField.BRAND) || brandName != null
+                ? device.join("brand")
+                : null;
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (DeviceField field : fields) {
+            Selection<?> selection = field == DeviceField.BRAND
+                    ? brand.get("name")
+                    : device.get(field.getJsonName());
+            selections.add(selection.alias(field.getJsonName()));
+        }
+        query.multiselect(selections);
+
+        List<Predicate> filters = new ArrayList<>(2);
+        if (state != null) {
+            filters.add(cb.equal(device.get("state"), state));
+        }
+        if (brandName != null) {
+            filters.add(cb.equal(brand.get("name"), brandName));
+        }
+        query.where(filters.toArray(Predicate[]::new));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>(fields.size() * 2);
+            for (DeviceField field : fields) {
+                row.put(field.getJsonName(), tuple.get(field.getJsonName()));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
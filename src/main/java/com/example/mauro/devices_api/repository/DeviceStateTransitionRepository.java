@@ -0,0 +1,16 @@
+package com.example.mauro.devices_api.repository;
+
+import com.example.mauro.devices_api.model.DeviceStateTransition;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface DeviceStateTransitionRepository extends JpaRepository<DeviceStateTransition, Long> {
+    // Keyset pagination on (device_id, id), both served by the index without
+    // skipping rows
+    List<DeviceStateTransition> findByDeviceIdOrderByIdDesc(Long deviceId, Limit limit);
+
+    List<DeviceStateTransition> findByDeviceIdAndIdLessThanOrderByIdDesc(Long deviceId, Long before, Limit limit);
+}
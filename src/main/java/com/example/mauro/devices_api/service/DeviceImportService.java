@@ -0,0 +1,323 @@
+package com.example.mauro.devices_api.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.mauro.devices_api.dto.DeviceImportResultDTO;
+import com.example.mauro.devices_api.exception.ImportNotAvailableException;
+import com.example.mauro.devices_api.history.DeviceStateHistory;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Bulk import of devices from CSV files with the columns
+ * {@code name,brand,state,creation_time} (header line required, creation_time
+ * may be empty).
+ *
+ * The file is streamed into a transaction-scoped staging table and merged into
+ * {@code brands} and {@code devices} with set-based statements, so memory use
+ * does not depend on the file size. On PostgreSQL the rows are loaded through
+ * the COPY protocol; on other databases (H2) they are inserted with JDBC
+ * batches. The state history of the imported devices is written by the same
+ * transaction, with one more set-based insert, instead of going through the
+ * DeviceStateHistory queue.
+ */
+@Service
+public class DeviceImportService {
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportService.class);
+
+    static final int BATCH_SIZE = 1000;
+    static final int MAX_REPORTED_DUPLICATES = 1000;
+
+    private static final String STAGING = "device_import_staging";
+
+    private static final String CREATE_STAGING_POSTGRES = "CREATE TEMP TABLE " + STAGING
+            + " (line_no BIGSERIAL, name VARCHAR(255), brand VARCHAR(255), state VARCHAR(32),"
+            + " creation_time TIMESTAMP, accepted BOOLEAN NOT NULL DEFAULT FALSE) ON COMMIT DROP";
+
+    private static final String CREATE_STAGING_GENERIC = "CREATE LOCAL TEMPORARY TABLE " + STAGING
+            + " (line_no BIGINT GENERATED BY DEFAULT AS IDENTITY, name VARCHAR(255), brand VARCHAR(255),"
+            + " state VARCHAR(32), creation_time TIMESTAMP, accepted BOOLEAN DEFAULT FALSE NOT NULL,"
+            + " UNIQUE (name, line_no)) ON COMMIT DROP TRANSACTIONAL";
+
+    private static final String COPY_IN = "COPY " + STAGING
+            + " (name, brand, state, creation_time) FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+    private static final String INSERT_STAGING = "INSERT INTO " + STAGING
+            + " (name, brand, state, creation_time) VALUES (?, ?, ?, ?)";
+
+    private static final String VALID_ROW = validRow("s");
+
+    // A row is a duplicate when the name already exists or an earlier valid row
+    // of the same file uses it (the first occurrence wins)
+    private static final String DUPLICATE_ROW = "(EXISTS (SELECT 1 FROM devices d WHERE d.name = s.name)"
+            + " OR EXISTS (SELECT 1 FROM " + STAGING + " p WHERE p.name = s.name AND p.line_no < s.line_no AND "
+            + validRow("p") + "))";
+
+    // Marked before the merge, which turns every accepted row into a duplicate
+    private static final String MARK_ACCEPTED = "UPDATE " + STAGING + " s SET accepted = TRUE WHERE " + VALID_ROW
+            + " AND NOT " + DUPLICATE_ROW;
+
+    private static final String COUNT_VALID = "SELECT COUNT(*) FROM " + STAGING + " s WHERE " + VALID_ROW;
+
+    private static final String SELECT_DUPLICATES = "SELECT s.name FROM " + STAGING + " s WHERE " + VALID_ROW
+            + " AND " + DUPLICATE_ROW + " ORDER BY s.line_no";
+
+    private static final String MERGE_BRANDS = "INSERT INTO brands (name) SELECT DISTINCT s.brand FROM " + STAGING
+            + " s WHERE s.accepted AND NOT EXISTS (SELECT 1 FROM brands b WHERE b.name = s.brand)";
+
+    private static final String MERGE_DEVICES = "INSERT INTO devices (name, brand_id, state, creation_time)"
+            + " SELECT s.name, b.id, s.state, COALESCE(s.creation_time, CURRENT_TIMESTAMP) FROM " + STAGING
+            + " s JOIN brands b ON b.name = s.brand WHERE s.accepted";
+
+    // Accepted names did not exist before the merge, so they find exactly the
+    // imported devices
+    private static final String MERGE_HISTORY = "INSERT INTO device_state_history"
+            + " (device_id, from_state, to_state, actor, changed_at) SELECT d.id, NULL, d.state, ?, ? FROM devices d"
+            + " JOIN " + STAGING + " s ON s.name = d.name WHERE s.accepted";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceReadCoalescer coalescer;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DeviceReadModel readModel;
+    private final DeviceShards shards;
+    private final DeviceStateHistory history;
+
+    public DeviceImportService(JdbcTemplate jdbcTemplate, DeviceReadCoalescer coalescer,
+            EntityManagerFactory entityManagerFactory, DeviceReadModel readModel, DeviceShards shards,
+            DeviceStateHistory history) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coalescer = coalescer;
+        this.entityManagerFactory = entityManagerFactory;
+        this.readModel = readModel;
+        this.shards = shards;
+        this.history = history;
+    }
+
+    @Transactional
+    public DeviceImportResultDTO importCsv(InputStream csv) {
+        if (shards.isSharded()) {
+            // The merge statements assume every brand and device in one database
+            throw new ImportNotAvailableException("CSV import is not available with sharding");
+        }
+        long start = System.nanoTime();
+        coalescer.invalidateAfterCommit();
+        evictBrandQueriesAfterCommit();
+        readModel.reloadAfterCommit();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        String actor = DeviceStateHistory.currentActor();
+
+        DeviceImportResultDTO result = jdbcTemplate.execute((ConnectionCallback<DeviceImportResultDTO>) con -> {
+            boolean postgres = con.isWrapperFor(PGConnection.class);
+            long rowsRead;
+            try (Statement st = con.createStatement()) {
+                if (postgres) {
+                    st.execute(CREATE_STAGING_POSTGRES);
+                    rowsRead = copyIn(con, reader);
+                    st.execute("CREATE INDEX ON " + STAGING + " (name)");
+                    st.execute("ANALYZE " + STAGING);
+                } else {
+                    st.execute(CREATE_STAGING_GENERIC);
+                    rowsRead = batchInsert(con, reader);
+                }
+            }
+            return merge(con, postgres ? "copy" : "batch", rowsRead, actor);
+        });
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        result.setElapsedMillis(elapsedMillis);
+        result.setRowsPerSecond(result.getRowsRead() * 1000 / elapsedMillis);
+        log.info("Imported {} of {} rows via {} in {} ms ({} rows/sec), {} duplicates, {} rejected",
+                result.getImported(), result.getRowsRead(), result.getLoadPath(), elapsedMillis,
+                result.getRowsPerSecond(), result.getDuplicates(), result.getRejected());
+        return result;
+    }
+
+    // Brands are inserted behind Hibernate's back, so cached "no such brand"
+    // lookups must be dropped explicitly
+    private void evictBrandQueriesAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                entityManagerFactory.unwrap(SessionFactory.class).getCache()
+                        .evictQueryRegion(Brand.BY_NAME_QUERY_REGION);
+            }
+        });
+    }
+
+    private long copyIn(Connection con, Reader reader) throws SQLException {
+        CopyManager copyManager = con.unwrap(PGConnection.class).getCopyAPI();
+        try {
+            return copyManager.copyIn(COPY_IN, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long batchInsert(Connection con, BufferedReader lines) throws SQLException {
+        long rows = 0;
+        try (PreparedStatement ps = con.prepareStatement(INSERT_STAGING)) {
+            // First line is the header
+            lines.readLine();
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                ps.setString(1, field(fields, 0));
+                ps.setString(2, field(fields, 1));
+                ps.setString(3, field(fields, 2));
+                ps.setObject(4, parseTimestamp(field(fields, 3)));
+                ps.addBatch();
+                if (++rows % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            if (rows % BATCH_SIZE != 0) {
+                ps.executeBatch();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rows;
+    }
+
+    private DeviceImportResultDTO merge(Connection con, String loadPath, long rowsRead, String actor)
+            throws SQLException {
+        long valid;
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(COUNT_VALID)) {
+            rs.next();
+            valid = rs.getLong(1);
+        }
+
+        long duplicates = 0;
+        List<String> duplicateNames = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(SELECT_DUPLICATES)) {
+            ps.setFetchSize(BATCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (duplicates++ < MAX_REPORTED_DUPLICATES) {
+                        duplicateNames.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+
+        long brandsCreated;
+        long imported;
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate(MARK_ACCEPTED);
+            brandsCreated = st.executeUpdate(MERGE_BRANDS);
+            imported = st.executeUpdate(MERGE_DEVICES);
+        }
+        if (history.isEnabled() && imported > 0) {
+            try (PreparedStatement ps = con.prepareStatement(MERGE_HISTORY)) {
+                ps.setString(1, actor);
+                ps.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+                ps.executeUpdate();
+            }
+        }
+
+        return DeviceImportResultDTO.builder()
+                .loadPath(loadPath)
+                .rowsRead(rowsRead)
+                .imported(imported)
+                .brandsCreated(brandsCreated)
+                .rejected(rowsRead - valid)
+                .duplicates(duplicates)
+                .duplicateNames(duplicateNames)
+                .build();
+    }
+
+    private static String validRow(String alias) {
+        String states = Arrays.stream(DeviceState.values())
+                .map(state -> "'" + state.name() + "'")
+                .collect(Collectors.joining(", "));
+        return "(" + alias + ".name IS NOT NULL AND " + alias + ".brand IS NOT NULL AND " + alias + ".state IN ("
+                + states + "))";
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static LocalDateTime parseTimestamp(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.trim().replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid creation_time: " + value, e);
+        }
+    }
+
+    /**
+     * Splits one CSV line following the same rules as COPY in CSV mode: fields
+     * may be quoted with double quotes, a doubled quote is a literal quote and an
+     * empty unquoted field is NULL. Quoted line breaks are not supported.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.isEmpty() && !quoted ? null : field.toString());
+                field.setLength(0);
+                quoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.isEmpty() && !quoted ? null : field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.mauro.devices_api.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.example.mauro.devices_api.sharding.ShardContext;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes device listings as JSON straight from the JDBC result set, in the
+ * same shape as a list of DeviceDTO. No entity, DTO or list is built per row:
+ * the field names are pre-encoded, the generator's buffers come from Jackson's
+ * per-thread recycler and the rows are fetched from a server-side cursor, so
+ * memory does not grow with the size of the listing.
+ *
+ * With sharding the listings over all devices read the shards one after the
+ * other, each with its own cursor, into the same array.
+ */
+@Service
+public class DeviceJsonStreamer {
+    static final int FETCH_SIZE = 1000;
+
+    private static final String SELECT_ROWS = "SELECT d.id, d.name, b.name, d.state, d.creation_time"
+            + " FROM devices d JOIN brands b ON b.id = d.brand_id";
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString BRAND = new SerializedString("brand");
+    private static final SerializableString STATE = new SerializedString("state");
+    private static final SerializableString CREATION_TIME = new SerializedString("creationTime");
+
+    // Same format as Jackson's LocalDateTimeSerializer, so both paths return identical JSON
+    private static final DateTimeFormatter CREATION_TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonFactory jsonFactory;
+    private final TransactionTemplate readOnlyTransaction;
+    private final DeviceShards shards;
+
+    public DeviceJsonStreamer(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager, DeviceShards shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonFactory = objectMapper.getFactory();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.shards = shards;
+    }
+
+    public void writeAll(OutputStream out) throws IOException {
+        write(out, allShards(), SELECT_ROWS);
+    }
+
+    public void writeByBrand(String brandName, OutputStream out) throws IOException {
+        write(out, List.of(shards.shardOfBrand(brandName)), SELECT_ROWS + " WHERE b.name = ?", brandName);
+    }
+
+    public void writeByState(DeviceState state, OutputStream out) throws IOException {
+        write(out, allShards(), SELECT_ROWS + " WHERE d.state = ?", state.name());
+    }
+
+    private List<Integer> allShards() {
+        return IntStream.range(0, shards.shardCount()).boxed().toList();
+    }
+
+    private void write(OutputStream out, List<Integer> shardNumbers, String sql, Object... args) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            CreationTimeCache creationTimes = new CreationTimeCache();
+            generator.writeStartArray();
+            for (int shard : shardNumbers) {
+                try (ShardContext.Scope scope = shards.forShard(shard)) {
+                    // The cursor only streams inside a transaction (PostgreSQL fetches the
+                    // whole result at once in autocommit mode)
+                    readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(sql);
+                        statement.setFetchSize(FETCH_SIZE);
+                        for (int i = 0; i < args.length; i++) {
+                            statement.setObject(i + 1, args[i]);
+                        }
+                        return statement;
+                    }, rs -> {
+                        writeRow(generator, rs, creationTimes);
+                    }));
+                }
+            }
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeRow(JsonGenerator generator, ResultSet rs, CreationTimeCache creationTimes)
+            throws SQLException {
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            generator.writeNumber(rs.getLong(1));
+            generator.writeFieldName(NAME);
+            generator.writeString(rs.getString(2));
+            generator.writeFieldName(BRAND);
+            generator.writeString(rs.getString(3));
+            generator.writeFieldName(STATE);
+            generator.writeString(rs.getString(4));
+            generator.writeFieldName(CREATION_TIME);
+            generator.writeString(creationTimes.format(rs.getObject(5, LocalDateTime.class)));
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // The client went away; stop reading rows
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Direct-mapped cache of formatted creation times. Devices created together
+     * (imports, provisioning runs) share their timestamp, so most rows of a
+     * large listing hit it.
+     */
+    static final class CreationTimeCache {
+        private static final int SIZE = 256;
+
+        private final LocalDateTime[] times = new LocalDateTime[SIZE];
+        private final String[] formatted = new String[SIZE];
+
+        String format(LocalDateTime time) {
+            if (time == null) {
+                return null;
+            }
+            int index = time.hashCode() & (SIZE - 1);
+            if (!time.equals(times[index])) {
+                times[index] = time;
+                formatted[index] = CREATION_TIME_FORMAT.format(time);
+            }
+            return formatted[index];
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.mauro.devices_api.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+
+/**
+ * Single-flight coalescing of the hot device reads. Every write to devices or
+ * brands must call {@link #invalidateAfterCommit()}.
+ */
+@Component
+public class DeviceReadCoalescer {
+    final SingleFlight<Long, Optional<Device>> byId = new SingleFlight<>();
+    final SingleFlight<DeviceState, List<Device>> byState = new SingleFlight<>();
+    final SingleFlight<String, List<Device>> byBrand = new SingleFlight<>();
+
+    public void invalidateAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate();
+                }
+            });
+        } else {
+            invalidate();
+        }
+    }
+
+    void invalidate() {
+        byId.invalidate();
+        byState.invalidate();
+        byBrand.invalidate();
+    }
+}
@@ -0,0 +1,522 @@
+package com.example.mauro.devices_api.service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Optional in-process copy of the devices table that answers the state, brand
+ * and brand-and-state listings without a query. Enabled with
+ * {@code devices.read-model.enabled=true}.
+ *
+ * Each device occupies a slot of parallel primitive arrays, found through a
+ * long-to-int map on its id. Brand names are interned to small ints. Every
+ * state and every brand has a bitset of the slots it contains, so a listing is
+ * one bitset (or the intersection of two) walked in slot order.
+ *
+ * The table is loaded at startup, before readiness, and kept current by the
+ * writers: after each commit the written rows are read back, without holding
+ * the lock, and then applied under the write lock. Each read takes a stamp
+ * before it starts, and a row is only replaced or removed by a read with a
+ * higher stamp than the last one applied to it (or than the load), which
+ * started later and so saw at least the same commits; the model never goes
+ * back to an older version of a row even when commits and their reads
+ * complete out of order. Until the load finishes, {@link #isLoaded()} is false
+ * and callers query the database. A refresh that cannot read its rows unloads
+ * the model, which would otherwise keep serving the old rows, and loads it
+ * again.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DeviceReadModel implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(DeviceReadModel.class);
+
+    private static final String SELECT_ROWS = "SELECT d.id, d.name, d.state, d.creation_time, b.id, b.name"
+            + " FROM devices d JOIN brands b ON b.id = d.brand_id";
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final int MAX_LOAD_ATTEMPTS = 5;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Writes seen so far; a load that overlapped a write is discarded and retried
+    private final AtomicLong modifications = new AtomicLong();
+    // Taken before each read of the database, orders the reads
+    private final AtomicLong stamps = new AtomicLong();
+    private final AtomicInteger refreshesInFlight = new AtomicInteger();
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Guarded by lock, null until loaded
+    private Table table;
+    // Guarded by lock: stamp of the read the table was loaded from
+    private long tableStamp;
+    // Guarded by lock: stamp of the last read applied to each id, removed ids
+    // included; only needed while other refreshes may still apply older reads,
+    // so it is cleared whenever none is in flight
+    private final Map<Long, Long> appliedStamps = new HashMap<>();
+
+    public DeviceReadModel(@Value("${devices.read-model.enabled:false}") boolean enabled, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Reloads also run after an import has committed, outside its transaction
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (enabled) {
+            Gauge.builder("devices.read_model.devices", this, DeviceReadModel::size)
+                    .description("Devices held by the in-memory read model")
+                    .register(meterRegistry);
+            Gauge.builder("devices.read_model.bytes", this, DeviceReadModel::estimatedBytes)
+                    .description("Estimated heap used by the in-memory read model")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            load();
+        }
+    }
+
+    public boolean isLoaded() {
+        lock.readLock().lock();
+        try {
+            return table != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the whole table. Retried when a write commits while it runs, since
+     * the snapshot may predate that write.
+     */
+    public void load() {
+        for (int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+            long seen = modifications.get();
+            long stamp = stamps.incrementAndGet();
+            long start = System.nanoTime();
+            Table loaded = readOnlyTransaction.execute(status -> {
+                Table fresh = new Table(1024);
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(SELECT_ROWS);
+                    statement.setFetchSize(LOAD_FETCH_SIZE);
+                    return statement;
+                }, rs -> {
+                    fresh.put(Row.read(rs));
+                });
+                return fresh;
+            });
+
+            lock.writeLock().lock();
+            try {
+                if (modifications.get() == seen) {
+                    table = loaded;
+                    tableStamp = stamp;
+                    log.info("Read model loaded {} devices of {} brands in {} ms, about {} bytes per device",
+                            loaded.size(), loaded.brandCount(), (System.nanoTime() - start) / 1_000_000,
+                            loaded.size() == 0 ? 0 : loaded.estimatedBytes() / loaded.size());
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.warn("Read model not loaded, devices kept changing during {} attempts", MAX_LOAD_ATTEMPTS);
+    }
+
+    /**
+     * Re-reads the given devices after the current transaction commits, or right
+     * away without one. Ids that no longer exist are removed.
+     */
+    public void refreshAfterCommit(Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        Set<Long> copy = new HashSet<>(ids);
+        afterCommit(() -> refresh(copy));
+    }
+
+    /**
+     * Reloads the whole table after the current transaction commits, for bulk
+     * writes such as imports.
+     */
+    public void reloadAfterCommit() {
+        if (enabled) {
+            afterCommit(this::load);
+        }
+    }
+
+    // The find methods return null when the model is not loaded (it may be
+    // unloaded after isLoaded() returned true), callers then query the database
+
+    public List<Device> findByState(DeviceState state) {
+        lock.readLock().lock();
+        try {
+            if (table == null) {
+                return null;
+            }
+            return table.materialize(table.byState.get(state));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Device> findByBrandName(String brandName) {
+        lock.readLock().lock();
+        try {
+            if (table == null) {
+                return null;
+            }
+            Integer brand = table.brandIds.get(brandName);
+            return brand == null ? List.of() : table.materialize(table.byBrand.get(brand));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Device> findByBrandNameAndState(String brandName, DeviceState state) {
+        lock.readLock().lock();
+        try {
+            if (table == null) {
+                return null;
+            }
+            Integer brand = table.brandIds.get(brandName);
+            if (brand == null) {
+                return List.of();
+            }
+            BitSet slots = (BitSet) table.byBrand.get(brand).clone();
+            slots.and(table.byState.get(state));
+            return table.materialize(slots);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table == null ? 0 : table.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return table == null ? 0 : table.estimatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Runs after a write has committed, so a failure is not the writer's: the
+    // model is unloaded, listings go to the database, and it is loaded again
+    private void refresh(Set<Long> ids) {
+        long stamp = beginRefresh();
+        List<Row> rows = null;
+        try {
+            rows = readRows(ids);
+        } catch (RuntimeException ex) {
+            log.error("Read model refresh of {} devices failed, reloading: {}", ids.size(), ex.getMessage());
+        } finally {
+            endRefresh(ids, rows, stamp);
+        }
+        if (rows == null) {
+            try {
+                load();
+            } catch (RuntimeException ex) {
+                log.error("Read model reload failed, listings query the database: {}", ex.getMessage());
+            }
+        }
+    }
+
+    long beginRefresh() {
+        refreshesInFlight.incrementAndGet();
+        return stamps.incrementAndGet();
+    }
+
+    // Runs on the connection of the transaction that just committed, so a writer
+    // never waits for a second connection, and outside the lock, so readers do
+    // not wait for the database
+    List<Row> readRows(Set<Long> ids) {
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Row> rows = new ArrayList<>(ids.size());
+        jdbcTemplate.query(SELECT_ROWS + " WHERE d.id IN (" + placeholders + ")", rs -> {
+            rows.add(Row.read(rs));
+        }, ids.toArray());
+        return rows;
+    }
+
+    /**
+     * Applies the rows read for ids under the given stamp; ids without a row no
+     * longer exist. A failed read (null rows) unloads the model, which no
+     * longer knows the state of those ids.
+     */
+    void endRefresh(Set<Long> ids, List<Row> rows, long stamp) {
+        lock.writeLock().lock();
+        try {
+            modifications.incrementAndGet();
+            if (rows == null) {
+                table = null;
+            } else if (table != null && stamp > tableStamp) {
+                Set<Long> missing = new HashSet<>(ids);
+                for (Row row : rows) {
+                    missing.remove(row.id());
+                    if (claim(row.id(), stamp)) {
+                        table.put(row);
+                    }
+                }
+                for (Long id : missing) {
+                    if (claim(id, stamp)) {
+                        table.remove(id);
+                    }
+                }
+            }
+            if (refreshesInFlight.decrementAndGet() == 0) {
+                appliedStamps.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Whether the read with this stamp is newer than the last one applied to id
+    private boolean claim(long id, long stamp) {
+        Long applied = appliedStamps.get(id);
+        if (applied != null && applied > stamp) {
+            return false;
+        }
+        appliedStamps.put(id, stamp);
+        return true;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /** A devices row joined with its brand. */
+    record Row(long id, String name, DeviceState state, LocalDateTime creationTime, long brandId, String brandName) {
+        static Row read(ResultSet rs) throws SQLException {
+            return new Row(rs.getLong(1), rs.getString(2), DeviceState.valueOf(rs.getString(3)),
+                    rs.getObject(4, LocalDateTime.class), rs.getLong(5), rs.getString(6));
+        }
+    }
+
+    /**
+     * The devices in compact form. A slot holds one device; freed slots are
+     * reused before the arrays grow.
+     */
+    private static final class Table {
+        private static final DeviceState[] STATES = DeviceState.values();
+
+        private final LongIntHashMap slotsById;
+        private long[] ids;
+        private String[] names;
+        private int[] brands;
+        private byte[] states;
+        // Microseconds since the epoch, the precision of a PostgreSQL timestamp
+        private long[] creationMicros;
+        private int slotCount;
+        private int[] freeSlots = new int[16];
+        private int freeCount;
+        private long nameBytes;
+
+        private final Map<String, Integer> brandIds = new HashMap<>();
+        private final List<String> brandNames = new ArrayList<>();
+        private final List<Long> brandDbIds = new ArrayList<>();
+        private final List<BitSet> byBrand = new ArrayList<>();
+        private final EnumMap<DeviceState, BitSet> byState = new EnumMap<>(DeviceState.class);
+
+        Table(int capacity) {
+            slotsById = new LongIntHashMap(capacity);
+            ids = new long[capacity];
+            names = new String[capacity];
+            brands = new int[capacity];
+            states = new byte[capacity];
+            creationMicros = new long[capacity];
+            for (DeviceState state : STATES) {
+                byState.put(state, new BitSet(capacity));
+            }
+        }
+
+        int size() {
+            return slotsById.size();
+        }
+
+        int brandCount() {
+            return brandNames.size();
+        }
+
+        /** Inserts or replaces the device of the row. */
+        void put(Row row) {
+            long id = row.id();
+            String name = row.name();
+            DeviceState state = row.state();
+            LocalDateTime creationTime = row.creationTime();
+            int brand = internBrand(row.brandId(), row.brandName());
+
+            int slot = slotsById.get(id);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = allocateSlot();
+                slotsById.put(id, slot);
+                ids[slot] = id;
+            } else {
+                byState.get(STATES[states[slot]]).clear(slot);
+                byBrand.get(brands[slot]).clear(slot);
+                nameBytes -= stringBytes(names[slot]);
+            }
+            names[slot] = name;
+            nameBytes += stringBytes(name);
+            brands[slot] = brand;
+            states[slot] = (byte) state.ordinal();
+            creationMicros[slot] = creationTime == null ? 0 : toMicros(creationTime);
+            byState.get(state).set(slot);
+            byBrand.get(brand).set(slot);
+        }
+
+        void remove(long id) {
+            int slot = slotsById.remove(id);
+            if (slot == LongIntHashMap.MISSING) {
+                return;
+            }
+            byState.get(STATES[states[slot]]).clear(slot);
+            byBrand.get(brands[slot]).clear(slot);
+            nameBytes -= stringBytes(names[slot]);
+            names[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+
+        List<Device> materialize(BitSet slots) {
+            List<Device> devices = new ArrayList<>(slots.cardinality());
+            // Entities are handed to callers, so each listing gets its own Brand instances
+            Brand[] brandEntities = new Brand[brandNames.size()];
+            for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                int brand = brands[slot];
+                if (brandEntities[brand] == null) {
+                    brandEntities[brand] = Brand.builder()
+                            .id(brandDbIds.get(brand))
+                            .name(brandNames.get(brand))
+                            .build();
+                }
+                devices.add(Device.builder()
+                        .id(ids[slot])
+                        .name(names[slot])
+                        .brand(brandEntities[brand])
+                        .state(STATES[states[slot]])
+                        .creationTime(fromMicros(creationMicros[slot]))
+                        .build());
+            }
+            return devices;
+        }
+
+        /**
+         * Heap estimate with compressed references: the id map, the slot
+         * arrays, the name strings and one bit per slot for each state and
+         * brand bitset.
+         */
+        long estimatedBytes() {
+            long capacity = ids.length;
+            long slotArrays = capacity * (Long.BYTES + Integer.BYTES + Integer.BYTES + Byte.BYTES + Long.BYTES);
+            long bitsets = (byState.size() + byBrand.size()) * capacity / Byte.SIZE;
+            return slotsById.estimatedBytes() + slotArrays + nameBytes + bitsets;
+        }
+
+        private int internBrand(long dbId, String name) {
+            Integer brand = brandIds.get(name);
+            if (brand == null) {
+                brand = brandNames.size();
+                brandIds.put(name, brand);
+                brandNames.add(name);
+                brandDbIds.add(dbId);
+                byBrand.add(new BitSet(ids.length));
+            }
+            return brand;
+        }
+
+        private int allocateSlot() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            if (slotCount == ids.length) {
+                int capacity = ids.length + (ids.length >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                brands = Arrays.copyOf(brands, capacity);
+                states = Arrays.copyOf(states, capacity);
+                creationMicros = Arrays.copyOf(creationMicros, capacity);
+            }
+            return slotCount++;
+        }
+
+        // String object and its byte[] for a Latin-1 name, rounded to 8 bytes
+        private static long stringBytes(String name) {
+            return name == null ? 0 : 24 + ((16 + name.length() + 7) & ~7);
+        }
+
+        private static long toMicros(LocalDateTime time) {
+            return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+        }
+
+        private static LocalDateTime fromMicros(long micros) {
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                    (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+        }
+    }
+}
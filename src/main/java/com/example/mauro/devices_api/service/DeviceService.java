@@ -1,21 +1,59 @@
 package com.example.mauro.devices_api.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.dto.DeviceField;
 import com.example.mauro.devices_api.exception.ResourceAlreadyExistsException;
 import com.example.mauro.devices_api.exception.ResourceCannotBeDeletedException;
+import com.example.mauro.devices_api.exception.ResourceCannotBeMovedException;
+import com.example.mauro.devices_api.history.DeviceStateHistory;
 import com.example.mauro.devices_api.model.Brand;
 import com.example.mauro.devices_api.model.Device;
 import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.model.DeviceStateTransition;
 import com.example.mauro.devices_api.repository.BrandRepository;
 import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.example.mauro.devices_api.repository.DeviceStateTransitionRepository;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.example.mauro.devices_api.sharding.ShardContext;
 
+/**
+ * Every operation is one transaction on one connection. Reads run read-only:
+ * Spring switches the Hibernate session to FlushMode.MANUAL and default
+ * read-only, so loaded entities keep no dirty-checking snapshot and nothing is
+ * flushed at commit. Writes lock the device row they check before acting on
+ * it.
+ *
+ * Concurrent identical point, state and brand reads are coalesced into one
+ * query; they open their transaction only once they own the query, so waiting
+ * callers do not hold connections. When the in-memory read model is enabled and
+ * loaded, the state and brand listings are answered from it instead.
+ *
+ * With sharding, operations on one device run on the shard encoded in its id,
+ * operations on one brand on the brand's shard, and the listings over all
+ * devices on every shard in parallel. A transaction is bound to the shard of
+ * its first statement, so each method enters its shard's scope before it
+ * touches the database.
+ */
 @Service
+@Transactional(readOnly = true)
 public class DeviceService {
     @Autowired
     private DeviceRepository deviceRepository;
@@ -23,84 +61,263 @@ public class DeviceService {
     @Autowired
     private BrandRepository brandRepository;
 
+    @Autowired
+    private DeviceReadCoalescer coalescer;
+
+    @Autowired
+    private DeviceStateReportBuffer stateReports;
+
+    @Autowired
+    private DeviceReadModel readModel;
+
+    @Autowired
+    private DeviceShards shards;
+
+    @Autowired
+    private DeviceStateHistory history;
+
+    @Autowired
+    private DeviceStateTransitionRepository historyRepository;
+
+    private TransactionTemplate readOnlyTransaction;
+    private TransactionTemplate newTransaction;
+
+    @Autowired
+    void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Records a state reported by a device agent. It is written in the next
+     * batched flush and visible through getDeviceById right away.
+     */
+    public void reportState(Long id, DeviceState state) {
+        stateReports.report(id, state);
+    }
+
     public List<Device> getAllDevices() {
-        return deviceRepository.findAll();
+        return onAllShards(() -> deviceRepository.findAll());
+    }
+
+    /**
+     * Sparse variants of the listings: only the requested fields are selected,
+     * and no entities are loaded.
+     */
+    public List<Map<String, Object>> getAllDevices(Set<DeviceField> fields) {
+        return onAllShards(() -> deviceRepository.findFields(fields, null, null));
+    }
+
+    public List<Map<String, Object>> getDevicesByBrand(String brandName, Set<DeviceField> fields) {
+        try (ShardContext.Scope scope = shards.forBrand(brandName)) {
+            return deviceRepository.findFields(fields, null, brandName);
+        }
+    }
+
+    public List<Map<String, Object>> getDevicesByState(DeviceState state, Set<DeviceField> fields) {
+        return onAllShards(() -> deviceRepository.findFields(fields, state, null));
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Optional<Device> getDeviceById(Long id) {
-        return deviceRepository.findById(id);
+        try (ShardContext.Scope scope = shards.forId(id)) {
+            return coalesced(coalescer.byId, id, () -> deviceRepository.findById(id))
+                    .map(this::withReportedState);
+        }
     }
 
+    /**
+     * Devices with the given ids, in no particular order, missing ids are
+     * skipped. One query for all ids (per shard).
+     */
+    public List<Device> getDevicesByIds(Collection<Long> ids) {
+        List<Device> devices = shards.isSharded()
+                ? shards.fanOutByShard(ids,
+                        shardIds -> readOnlyTransaction.execute(status -> deviceRepository.findAllByIdIn(shardIds)))
+                : deviceRepository.findAllByIdIn(ids);
+        return devices.stream()
+                .map(this::withReportedState)
+                .toList();
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<Device> getDevicesByBrand(String brandName) {
-        List<Device> devices = deviceRepository.findByBrandName(brandName);
-        return devices;
+        List<Device> fromReadModel = useReadModel() ? readModel.findByBrandName(brandName) : null;
+        if (fromReadModel != null) {
+            return fromReadModel;
+        }
+        try (ShardContext.Scope scope = shards.forBrand(brandName)) {
+            return coalesced(coalescer.byBrand, brandName,
+                    () -> Collections.unmodifiableList(deviceRepository.findByBrandName(brandName)));
+        }
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<Device> getDevicesByState(DeviceState state) {
-        return deviceRepository.findByState(state);
+        List<Device> fromReadModel = useReadModel() ? readModel.findByState(state) : null;
+        if (fromReadModel != null) {
+            return fromReadModel;
+        }
+        return coalesced(coalescer.byState, state,
+                () -> Collections.unmodifiableList(onAllShards(() -> deviceRepository.findByState(state))));
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<Device> getDevicesByBrandAndState(String brandName, DeviceState state) {
+        List<Device> fromReadModel = useReadModel() ? readModel.findByBrandNameAndState(brandName, state) : null;
+        if (fromReadModel != null) {
+            return fromReadModel;
+        }
+        try (ShardContext.Scope scope = shards.forBrand(brandName)) {
+            return readOnlyTransaction.execute(status -> deviceRepository.findByBrandNameAndState(brandName, state));
+        }
     }
 
+    /**
+     * State changes of a device, newest first, starting below the given
+     * transition id (keyset pagination) or at the newest one. Changes are written
+     * asynchronously, the latest ones may take devices.history.flush-interval to
+     * show up.
+     */
+    public List<DeviceStateTransition> getStateHistory(Long id, Long before, int limit) {
+        try (ShardContext.Scope scope = shards.forId(id)) {
+            return before == null
+                    ? historyRepository.findByDeviceIdOrderByIdDesc(id, Limit.of(limit))
+                    : historyRepository.findByDeviceIdAndIdLessThanOrderByIdDesc(id, before, Limit.of(limit));
+        }
+    }
+
+    // Without sharding the query runs as it is, in the current transaction. With
+    // sharding it runs on every shard in parallel, each in its own read-only
+    // transaction, and the results are concatenated in shard order
+    private <T> List<T> onAllShards(Supplier<List<T>> query) {
+        if (!shards.isSharded()) {
+            return query.get();
+        }
+        return shards.fanOut(() -> readOnlyTransaction.execute(status -> query.get()));
+    }
+
+    // Like coalescing, the read model only holds committed rows, so it is not
+    // used inside a caller's transaction
+    private boolean useReadModel() {
+        return readModel.isLoaded() && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    // Overlays a state report that is still waiting to be flushed, on a copy since
+    // coalesced results are shared between callers
+    private Device withReportedState(Device device) {
+        DeviceState reported = stateReports.pendingState(device.getId());
+        if (reported == null || reported == device.getState()) {
+            return device;
+        }
+        return Device.builder()
+                .id(device.getId())
+                .name(device.getName())
+                .brand(device.getBrand())
+                .state(reported)
+                .creationTime(device.getCreationTime())
+                .build();
+    }
+
+    private <K, V> V coalesced(SingleFlight<K, V> flights, K key, Supplier<V> query) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // The caller's transaction may hold uncommitted writes, never share them
+            return query.get();
+        }
+        return flights.execute(key, () -> readOnlyTransaction.execute(status -> query.get()));
+    }
+
+    @Transactional
     public Device createDevice(Device device) {
-        Optional<Device> olDevice = deviceRepository.findByName(device.getName());
-        if (olDevice.isPresent()) {
+        coalescer.invalidateAfterCommit();
+        // Names are unique across all shards
+        List<Device> olDevices = onAllShards(() -> deviceRepository.findByName(device.getName()).stream().toList());
+        if (!olDevices.isEmpty()) {
             throw new ResourceAlreadyExistsException("There is already a device with name = " + device.getName());
         }
         String brandName = device.getBrand().getName();
-        Brand brand = brandRepository.findByName(brandName)
-                .orElseGet(() -> brandRepository.save(device.getBrand()));
+        try (ShardContext.Scope scope = shards.forBrand(brandName)) {
+            Brand brand = brandRepository.findByName(brandName)
+                    .orElseGet(() -> brandRepository.save(device.getBrand()));
 
-        device.setBrand(brand);
-        Device savedDevice = deviceRepository.save(device);
-        return savedDevice;
+            device.setBrand(brand);
+            Device savedDevice = deviceRepository.save(device);
+            readModel.refreshAfterCommit(List.of(savedDevice.getId()));
+            history.recordAfterCommit(savedDevice.getId(), null, savedDevice.getState());
+            return savedDevice;
+        }
     }
 
+    @Transactional
     public Device updateDevice(Long id, DeviceDTO deviceDTO) {
-        Optional<Device> existingDeviceOpt = deviceRepository.findById(id);
-        if (existingDeviceOpt.isEmpty()) {
-            // device does not exist, create a new device
-            Brand brand = brandRepository.findByName(deviceDTO.getBrand())
-                    .orElseGet(() -> brandRepository.save(Brand.builder().name(deviceDTO.getBrand()).build()));
-            Device device = Device.builder()
-                    .name(deviceDTO.getName())
-                    .brand(brand)
-                    .state(deviceDTO.getState())
-                    .build();
-            return createDevice(device);
-        }
+        coalescer.invalidateAfterCommit();
+        stateReports.discard(id);
+        try (ShardContext.Scope scope = shards.forId(id)) {
+            Optional<Device> existingDeviceOpt = deviceRepository.findWithLockById(id);
+            if (existingDeviceOpt.isEmpty()) {
+                // device does not exist, create a new device (createDevice looks up or
+                // creates the brand)
+                Device device = Device.builder()
+                        .name(deviceDTO.getName())
+                        .brand(Brand.builder().name(deviceDTO.getBrand()).build())
+                        .state(deviceDTO.getState())
+                        .build();
+                // With sharding this transaction is bound to the shard of the id, the
+                // device goes to the shard of its brand
+                return shards.isSharded() ? newTransaction.execute(status -> createDevice(device))
+                        : createDevice(device);
+            }
 
-        Device existingDevice = existingDeviceOpt.get();
+            Device existingDevice = existingDeviceOpt.get();
+            DeviceState previousState = existingDevice.getState();
 
-        if (!existingDevice.getState().equals(DeviceState.IN_USE)) {
-            // Do not update name and/or brand if device is in use
-            // Maybe should be better ro return a failed status instead of ignoring those
-            // fields...
+            if (!existingDevice.getState().equals(DeviceState.IN_USE)) {
+                // Do not update name and/or brand if device is in use
+                // Maybe should be better ro return a failed status instead of ignoring those
+                // fields...
+
+                if (deviceDTO.getName() != null) {
+                    existingDevice.setName(deviceDTO.getName());
+                }
+                if (deviceDTO.getBrand() != null) {
+                    if (!deviceDTO.getBrand().equals(existingDevice.getBrand().getName())
+                            && shards.shardOfBrand(deviceDTO.getBrand()) != shards.shardOfId(id)) {
+                        throw new ResourceCannotBeMovedException("Device " + id + " cannot move to brand "
+                                + deviceDTO.getBrand() + ", which is stored on another shard");
+                    }
+                    Brand brand = brandRepository.findByName(deviceDTO.getBrand())
+                            .orElseGet(() -> brandRepository.save(Brand.builder().name(deviceDTO.getBrand()).build()));
+                    existingDevice.setBrand(brand);
+                }
 
-            if (deviceDTO.getName() != null) {
-                existingDevice.setName(deviceDTO.getName());
-            }
-            if (deviceDTO.getBrand() != null) {
-                Brand brand = brandRepository.findByName(deviceDTO.getBrand())
-                        .orElseGet(() -> brandRepository.save(Brand.builder().name(deviceDTO.getBrand()).build()));
-                existingDevice.setBrand(brand);
             }
+            existingDevice.setState(deviceDTO.getState());
+            history.recordAfterCommit(id, previousState, deviceDTO.getState());
 
+            // creationTime is not updated
+            readModel.refreshAfterCommit(List.of(id));
+            return deviceRepository.save(existingDevice);
         }
-        existingDevice.setState(deviceDTO.getState());
-
-        // creationTime is not updated
-        return deviceRepository.save(existingDevice);
     }
 
+    @Transactional
     public boolean deleteDevice(Long id) {
-        Device device = deviceRepository.findById(id).orElse(null);
-        if (device == null) {
-            return false;
-        }
-        if (device.getState() == DeviceState.IN_USE) {
-            throw new ResourceCannotBeDeletedException("Device " + id + "is in use and cannot be deleted");
+        coalescer.invalidateAfterCommit();
+        stateReports.discard(id);
+        try (ShardContext.Scope scope = shards.forId(id)) {
+            Device device = deviceRepository.findWithLockById(id).orElse(null);
+            if (device == null) {
+                return false;
+            }
+            if (device.getState() == DeviceState.IN_USE) {
+                throw new ResourceCannotBeDeletedException("Device " + id + "is in use and cannot be deleted");
+            }
+            deviceRepository.deleteById(id);
+            readModel.refreshAfterCommit(List.of(id));
+            return true;
         }
-        deviceRepository.deleteById(id);
-        return true;
     }
 
 }
\ No newline at end of file
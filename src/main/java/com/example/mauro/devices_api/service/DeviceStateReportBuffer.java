@@ -0,0 +1,165 @@
+package com.example.mauro.devices_api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.mauro.devices_api.history.DeviceStateHistory;
+import com.example.mauro.devices_api.history.HistoryQueueFullException;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.example.mauro.devices_api.sharding.ShardContext;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind buffer for the state reports sent by device agents. Reports are
+ * coalesced per device (last write wins) and flushed periodically: the flush
+ * locks the reported rows, skips devices already in the reported state and
+ * writes the rest with one batched UPDATE. Pending reports are flushed on
+ * shutdown.
+ */
+@Component
+public class DeviceStateReportBuffer {
+    private static final Logger log = LoggerFactory.getLogger(DeviceStateReportBuffer.class);
+
+    static final int CHUNK_SIZE = 1000;
+
+    // Actor of the state changes in the history
+    static final String HISTORY_ACTOR = "state-report";
+
+    private final ConcurrentHashMap<Long, DeviceState> pending = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final DeviceReadCoalescer coalescer;
+    private final DeviceReadModel readModel;
+    private final DeviceShards shards;
+    private final DeviceStateHistory history;
+
+    public DeviceStateReportBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            DeviceReadCoalescer coalescer, DeviceReadModel readModel, DeviceShards shards,
+            DeviceStateHistory history, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.coalescer = coalescer;
+        this.readModel = readModel;
+        this.shards = shards;
+        this.history = history;
+        FunctionCounter.builder("devices.state_reports.received", received, LongAdder::sum)
+                .description("State reports received")
+                .register(meterRegistry);
+        FunctionCounter.builder("devices.state_reports.written", written, LongAdder::sum)
+                .description("Device rows updated by state report flushes")
+                .register(meterRegistry);
+    }
+
+    public void report(Long deviceId, DeviceState state) {
+        received.increment();
+        pending.put(deviceId, state);
+    }
+
+    /** State reported for the device and not flushed yet, or null. */
+    public DeviceState pendingState(Long deviceId) {
+        return pending.get(deviceId);
+    }
+
+    /**
+     * Drops the pending report of a device, called by writes that set the state
+     * themselves so an older report cannot overwrite them.
+     */
+    public void discard(Long deviceId) {
+        pending.remove(deviceId);
+    }
+
+    @Scheduled(fixedDelayString = "${devices.state-report.flush-interval:1s}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (DataAccessException | HistoryQueueFullException ex) {
+            // The reports stay pending and are retried on the next flush
+            log.warn("State report flush failed: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Writes the pending reports, returns the number of rows updated.
+     */
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        Map<Long, DeviceState> batch = new HashMap<>(pending);
+        List<Long> ids = new ArrayList<>(batch.keySet());
+        Collections.sort(ids);
+
+        int updated = 0;
+        // One transaction per chunk of a shard's devices (a single shard without sharding)
+        for (Map.Entry<Integer, List<Long>> shard : shards.groupByShard(ids).entrySet()) {
+            List<Long> shardIds = shard.getValue();
+            for (int from = 0; from < shardIds.size(); from += CHUNK_SIZE) {
+                List<Long> chunk = shardIds.subList(from, Math.min(shardIds.size(), from + CHUNK_SIZE));
+                Integer rows;
+                try (ShardContext.Scope scope = shards.forShard(shard.getKey())) {
+                    rows = transaction.execute(status -> flushChunk(chunk, batch));
+                }
+                updated += rows;
+                // Only remove what was written, a newer report arriving meanwhile stays
+                chunk.forEach(id -> pending.remove(id, batch.get(id)));
+            }
+        }
+        written.add(updated);
+        return updated;
+    }
+
+    private int flushChunk(List<Long> ids, Map<Long, DeviceState> batch) {
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        // Ids are sorted, so concurrent flushes and updates lock rows in the same order
+        List<Object[]> changes = new ArrayList<>();
+        List<DeviceState> previousStates = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, state FROM devices WHERE id IN (" + placeholders + ") ORDER BY id FOR UPDATE",
+                rs -> {
+                    long id = rs.getLong(1);
+                    DeviceState reported = batch.get(id);
+                    // A write that set the state itself since the report discarded it
+                    if (reported != null && reported == pending.get(id) && !reported.name().equals(rs.getString(2))) {
+                        changes.add(new Object[] { reported.name(), id });
+                        String previous = rs.getString(2);
+                        previousStates.add(previous == null ? null : DeviceState.valueOf(previous));
+                    }
+                }, ids.toArray());
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate("UPDATE devices SET state = ? WHERE id = ?", changes);
+        coalescer.invalidateAfterCommit();
+        readModel.refreshAfterCommit(changes.stream().map(change -> (Long) change[1]).toList());
+        for (int i = 0; i < changes.size(); i++) {
+            Long id = (Long) changes.get(i)[1];
+            history.recordAfterCommit(id, previousStates.get(i), batch.get(id), HISTORY_ACTOR);
+        }
+        return changes.size();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.mauro.devices_api.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the
+ * loader, callers arriving while it is in flight wait for and share its
+ * result. Nothing is kept once the call completes.
+ *
+ * {@link #invalidate()} must be called after every committed write: callers
+ * arriving afterwards never join a call that started before it, so a read that
+ * starts after a write always sees that write.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+
+    public V execute(K key, Supplier<V> loader) {
+        long arrival = generation.get();
+        while (true) {
+            Flight<V> existing = flights.get(key);
+            if (existing != null && existing.generation >= arrival) {
+                joins.increment();
+                return existing.join();
+            }
+            Flight<V> flight = new Flight<>(arrival);
+            boolean owner = existing == null
+                    ? flights.putIfAbsent(key, flight) == null
+                    : flights.replace(key, existing, flight);
+            if (owner) {
+                return run(key, flight, loader);
+            }
+            // Lost the race to another caller, look again
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /** Number of loader executions. */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /** Number of calls answered by another caller's execution. */
+    public long getJoins() {
+        return joins.sum();
+    }
+
+    private V run(K key, Flight<V> flight, Supplier<V> loader) {
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static final class Flight<V> {
+        private final long generation;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        private Flight(long generation) {
+            this.generation = generation;
+        }
+
+        private V join() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mauro.devices_api.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Maps brand names to shards with a consistent hash ring: every shard owns
+ * {@code virtualNodes} points of the ring and a brand belongs to the shard of
+ * the first point at or after its hash, so adding a shard only reassigns the
+ * brands that fall on its new points. Pinned brands bypass the ring. The map
+ * does not move any rows; ShardingConfig refuses to start while a brand is
+ * stored on a shard other than its own.
+ *
+ * Device ids carry their shard in the top 16 bits (each shard's identity
+ * columns start at {@code shard << 48}), so a device is found from its id alone.
+ */
+public final class BrandShardMap {
+    static final int ID_SHARD_SHIFT = 48;
+    static final int MAX_SHARDS = 1 << 15;
+
+    private final int shardCount;
+    private final Map<String, Integer> pinned;
+    private final long[] ringHashes;
+    private final int[] ringShards;
+
+    public BrandShardMap(int shardCount, int virtualNodes, Map<String, Integer> pinned) {
+        if (shardCount < 1 || shardCount > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS + ": " + shardCount);
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+        }
+        pinned.forEach((brand, shard) -> {
+            if (shard == null || shard < 0 || shard >= shardCount) {
+                throw new IllegalArgumentException("Brand " + brand + " is pinned to unknown shard " + shard);
+            }
+        });
+        this.shardCount = shardCount;
+        this.pinned = Map.copyOf(pinned);
+
+        int points = shardCount * virtualNodes;
+        long[] hashes = new long[points];
+        for (int shard = 0, i = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++, i++) {
+                hashes[i] = hash("shard-" + shard + "#" + node);
+            }
+        }
+        // Sort the points by hash, keeping the shard of each point; ties go to the
+        // lower shard so the ring does not depend on insertion order
+        Integer[] order = new Integer[points];
+        for (int i = 0; i < points; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byHash = Long.compareUnsigned(hashes[a], hashes[b]);
+            return byHash != 0 ? byHash : Integer.compare(a, b);
+        });
+        this.ringHashes = new long[points];
+        this.ringShards = new int[points];
+        for (int i = 0; i < points; i++) {
+            ringHashes[i] = hashes[order[i]];
+            ringShards[i] = order[i] / virtualNodes;
+        }
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public int shardOfBrand(String brandName) {
+        Integer shard = pinned.get(brandName);
+        if (shard != null) {
+            return shard;
+        }
+        long h = hash(brandName);
+        int low = 0;
+        int high = ringHashes.length;
+        // First point with a hash >= h, wrapping around to the first point
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(ringHashes[mid], h) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return ringShards[low == ringHashes.length ? 0 : low];
+    }
+
+    public static int shardOfId(long id) {
+        return (int) (id >>> ID_SHARD_SHIFT);
+    }
+
+    /** First identity value of the shard's tables. */
+    public static long firstId(int shard) {
+        return ((long) shard << ID_SHARD_SHIFT) + 1;
+    }
+
+    // FNV-1a over the UTF-8 bytes, followed by the splitmix64 finalizer since
+    // FNV alone clusters similar short strings
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.mauro.devices_api.sharding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Routing of device operations to shards. Single-brand operations and
+ * operations on one device run on one shard, inside the scope returned by
+ * forBrand/forId; listings over all devices run on every shard in parallel and
+ * are merged in shard order.
+ *
+ * Without sharding every scope is a no-op and fan-outs run the query once on
+ * the calling thread, so callers need no separate code path.
+ */
+public class DeviceShards implements DisposableBean {
+    private final BrandShardMap shardMap;
+    private final ExecutorService executor;
+
+    private DeviceShards(BrandShardMap shardMap, ExecutorService executor) {
+        this.shardMap = shardMap;
+        this.executor = executor;
+    }
+
+    public static DeviceShards unsharded() {
+        return new DeviceShards(null, null);
+    }
+
+    public static DeviceShards sharded(BrandShardMap shardMap, int fanOutThreads) {
+        int threads = fanOutThreads > 0 ? fanOutThreads : 2 * shardMap.shardCount();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform()
+                .name("shard-fan-out-", 0)
+                .daemon(true)
+                .factory());
+        return new DeviceShards(shardMap, executor);
+    }
+
+    public boolean isSharded() {
+        return shardMap != null;
+    }
+
+    public int shardCount() {
+        return isSharded() ? shardMap.shardCount() : 1;
+    }
+
+    public int shardOfBrand(String brandName) {
+        return isSharded() ? shardMap.shardOfBrand(brandName) : 0;
+    }
+
+    /**
+     * Shard encoded in the id. An id of a shard that does not exist is routed to
+     * shard 0, where it is simply not found.
+     */
+    public int shardOfId(long id) {
+        if (!isSharded()) {
+            return 0;
+        }
+        int shard = BrandShardMap.shardOfId(id);
+        return shard < shardMap.shardCount() ? shard : 0;
+    }
+
+    public ShardContext.Scope forShard(int shard) {
+        return isSharded() ? ShardContext.enter(shard) : ShardContext.none();
+    }
+
+    public ShardContext.Scope forBrand(String brandName) {
+        return isSharded() ? ShardContext.enter(shardMap.shardOfBrand(brandName)) : ShardContext.none();
+    }
+
+    /** Scope of the shard encoded in the id. */
+    public ShardContext.Scope forId(long id) {
+        return isSharded() ? ShardContext.enter(shardOfId(id)) : ShardContext.none();
+    }
+
+    /**
+     * Runs the query on every shard and concatenates the results. The query runs
+     * on pool threads, each in its own transaction: it must open one itself, a
+     * transaction of the caller is not visible there.
+     */
+    public <T> List<T> fanOut(Supplier<List<T>> query) {
+        if (!isSharded()) {
+            return query.get();
+        }
+        Map<Integer, Callable<List<T>>> tasks = new TreeMap<>();
+        for (int shard = 0; shard < shardMap.shardCount(); shard++) {
+            tasks.put(shard, query::get);
+        }
+        return runOnShards(tasks);
+    }
+
+    /**
+     * Groups the ids by shard and runs the query for each group on its shard, in
+     * parallel, concatenating the results.
+     */
+    public <T> List<T> fanOutByShard(Collection<Long> ids, Function<List<Long>, List<T>> query) {
+        if (!isSharded()) {
+            return query.apply(new ArrayList<>(ids));
+        }
+        Map<Integer, List<Long>> idsByShard = groupByShard(ids);
+        if (idsByShard.size() == 1) {
+            // One shard involved, no need for a pool thread
+            Map.Entry<Integer, List<Long>> only = idsByShard.entrySet().iterator().next();
+            try (ShardContext.Scope scope = ShardContext.enter(only.getKey())) {
+                return query.apply(only.getValue());
+            }
+        }
+        Map<Integer, Callable<List<T>>> tasks = new TreeMap<>();
+        idsByShard.forEach((shard, shardIds) -> tasks.put(shard, () -> query.apply(shardIds)));
+        return runOnShards(tasks);
+    }
+
+    /** Ids grouped by the shard they are stored on, in shard order. */
+    public Map<Integer, List<Long>> groupByShard(Collection<Long> ids) {
+        Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+        for (Long id : ids) {
+            idsByShard.computeIfAbsent(shardOfId(id), shard -> new ArrayList<>()).add(id);
+        }
+        return idsByShard;
+    }
+
+    private <T> List<T> runOnShards(Map<Integer, Callable<List<T>>> tasks) {
+        List<Future<List<T>>> futures = new ArrayList<>(tasks.size());
+        tasks.forEach((shard, task) -> futures.add(executor.submit(() -> {
+            try (ShardContext.Scope scope = ShardContext.enter(shard)) {
+                return task.call();
+            }
+        })));
+        List<T> merged = new ArrayList<>();
+        try {
+            for (Future<List<T>> future : futures) {
+                merged.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return merged;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.mauro.devices_api.sharding;
+
+/**
+ * Shard the current thread's next connection is taken from. Connections are
+ * only bound to a shard at their first statement (see ShardRoutingDataSource),
+ * so a scope entered inside a transaction still decides where it runs as long
+ * as nothing was executed before.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private static final Scope NONE = () -> {
+    };
+
+    private ShardContext() {
+    }
+
+    /** Shard of the current scope, or null outside of any scope. */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /** Routes the current thread to the shard until the scope is closed. */
+    public static Scope enter(int shard) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /** A scope that leaves the routing as it is, used when sharding is off. */
+    static Scope none() {
+        return NONE;
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
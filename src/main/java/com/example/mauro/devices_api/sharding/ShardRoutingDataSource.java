@@ -0,0 +1,17 @@
+package com.example.mauro.devices_api.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the shard set in ShardContext, shard 0 outside of
+ * any scope (schema validation, startup queries). Must be wrapped in a
+ * LazyConnectionDataSourceProxy so the target is chosen at the first
+ * statement, after the service entered the shard's scope.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.mauro.devices_api.sharding;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Creates the device and state history tables of a shard. The identity
+ * columns of each shard start at {@code shard << 48}, which keeps ids unique
+ * across shards and lets BrandShardMap.shardOfId find a device's shard.
+ * Hibernate's schema management only sees shard 0, so the tables are created
+ * here, on every shard, before it starts.
+ */
+final class ShardSchema {
+    private ShardSchema() {
+    }
+
+    static void create(DataSource dataSource, int shard) {
+        long firstId = BrandShardMap.firstId(shard);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS brands ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH " + firstId + ") PRIMARY KEY,"
+                + " name VARCHAR(255) NOT NULL UNIQUE)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS devices ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH " + firstId + ") PRIMARY KEY,"
+                + " name VARCHAR(255) NOT NULL,"
+                + " brand_id BIGINT NOT NULL REFERENCES brands (id),"
+                + " state VARCHAR(255) NOT NULL,"
+                + " creation_time TIMESTAMP(6) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS device_state_history ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH " + firstId + ") PRIMARY KEY,"
+                + " device_id BIGINT NOT NULL,"
+                + " from_state VARCHAR(255),"
+                + " to_state VARCHAR(255) NOT NULL,"
+                + " actor VARCHAR(255) NOT NULL,"
+                + " changed_at TIMESTAMP(6) NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS device_state_history_device_id_idx"
+                + " ON device_state_history (device_id, id)");
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.mauro.devices_api.sharding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Brand sharding, enabled with devices.sharding.enabled=true and one
+ * devices.sharding.shards[n].url (plus .username and .password) per shard.
+ * spring.datasource.* is not used then. Without it DeviceShards routes
+ * nothing and the application runs on spring.datasource.* as before.
+ *
+ * Nothing moves data between shards: adding a shard or changing a
+ * brand-shards pin reassigns brands whose rows stay where they are, so
+ * startup fails while any brand is stored on a shard the map no longer
+ * assigns it to. Such a change needs the rows moved offline first.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    public DeviceShards deviceShards(ShardingProperties properties) {
+        if (!properties.isEnabled()) {
+            return DeviceShards.unsharded();
+        }
+        BrandShardMap shardMap = new BrandShardMap(properties.getShards().size(), properties.getVirtualNodes(),
+                properties.getBrandShards());
+        return DeviceShards.sharded(shardMap, properties.getFanOutThreads());
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "devices.sharding.enabled", havingValue = "true")
+    static class ShardedDataSourceConfig implements DisposableBean {
+        private static final int MAX_REPORTED_BRANDS = 10;
+
+        private final List<HikariDataSource> pools = new ArrayList<>();
+
+        @Bean
+        @Primary
+        public DataSource dataSource(ShardingProperties properties, DeviceShards deviceShards,
+                @Value("${devices.datasource.replica.url:}") String replicaUrl,
+                @Value("${devices.read-model.enabled:false}") boolean readModelEnabled) {
+            // Both assume a single database holding every device
+            if (!replicaUrl.isEmpty()) {
+                throw new IllegalStateException("devices.sharding cannot be combined with devices.datasource.replica");
+            }
+            if (readModelEnabled) {
+                throw new IllegalStateException("devices.sharding cannot be combined with devices.read-model");
+            }
+            List<ShardingProperties.Shard> shards = properties.getShards();
+            if (shards.isEmpty()) {
+                throw new IllegalStateException("devices.sharding.enabled is set but no devices.sharding.shards");
+            }
+
+            Map<Object, Object> targets = new HashMap<>();
+            List<String> misplaced = new ArrayList<>();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                ShardingProperties.Shard config = shards.get(shard);
+                HikariDataSource dataSource = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .url(config.getUrl())
+                        .username(config.getUsername())
+                        .password(config.getPassword())
+                        .build();
+                dataSource.setPoolName("shard-" + shard);
+                pools.add(dataSource);
+                ShardSchema.create(dataSource, shard);
+                misplaced.addAll(misplacedBrands(dataSource, shard, deviceShards));
+                targets.put(shard, dataSource);
+            }
+            if (!misplaced.isEmpty()) {
+                throw new IllegalStateException(misplaced.size() + " brands are stored on another shard than"
+                        + " devices.sharding assigns them to, e.g. "
+                        + misplaced.subList(0, Math.min(misplaced.size(), MAX_REPORTED_BRANDS))
+                        + "; move their brand and device rows before changing the shards or brand-shards");
+            }
+
+            ShardRoutingDataSource routing = new ShardRoutingDataSource();
+            routing.setTargetDataSources(targets);
+            routing.setDefaultTargetDataSource(targets.get(0));
+            routing.afterPropertiesSet();
+            return new LazyConnectionDataSourceProxy(routing);
+        }
+
+        // One row per brand, a few thousand at most, read once at startup
+        static List<String> misplacedBrands(DataSource dataSource, int shard, DeviceShards deviceShards) {
+            List<String> misplaced = new ArrayList<>();
+            for (String brand : new JdbcTemplate(dataSource).queryForList("SELECT name FROM brands", String.class)) {
+                int assigned = deviceShards.shardOfBrand(brand);
+                if (assigned != shard) {
+                    misplaced.add(brand + " (on shard " + shard + ", assigned to " + assigned + ")");
+                }
+            }
+            return misplaced;
+        }
+
+        // The routing data source does not own its targets, close the pools here
+        @Override
+        public void destroy() {
+            pools.forEach(HikariDataSource::close);
+        }
+    }
+}
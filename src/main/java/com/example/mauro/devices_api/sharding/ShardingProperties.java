@@ -0,0 +1,42 @@
+package com.example.mauro.devices_api.sharding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ConfigurationProperties("devices.sharding")
+public class ShardingProperties {
+    private boolean enabled = false;
+
+    /** The shard databases, the position in the list is the shard number. */
+    private List<Shard> shards = new ArrayList<>();
+
+    /** Points per shard on the hash ring, more points spread brands more evenly. */
+    private int virtualNodes = 128;
+
+    /**
+     * Brands pinned to a shard number, taking precedence over the hash ring, e.g.
+     * {@code devices.sharding.brand-shards[Dell]=2}.
+     */
+    private Map<String, Integer> brandShards = new HashMap<>();
+
+    /** Threads running the per-shard queries of a fan-out, 0 for two per shard. */
+    private int fanOutThreads = 0;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Shard {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
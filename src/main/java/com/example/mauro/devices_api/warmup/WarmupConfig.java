@@ -0,0 +1,28 @@
+package com.example.mauro.devices_api.warmup;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.mauro.devices_api.service.DeviceJsonStreamer;
+import com.example.mauro.devices_api.service.DeviceService;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(WarmupProperties.class)
+@ConditionalOnProperty(name = "devices.warmup.enabled", matchIfMissing = true)
+public class WarmupConfig {
+
+    @Bean
+    public WarmupRunner warmupRunner(WarmupProperties properties, DeviceService deviceService,
+            DeviceJsonStreamer deviceJsonStreamer, JdbcTemplate jdbcTemplate, DeviceShards deviceShards,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new WarmupRunner(properties, deviceService, deviceJsonStreamer, jdbcTemplate, deviceShards,
+                objectMapper, meterRegistry);
+    }
+}
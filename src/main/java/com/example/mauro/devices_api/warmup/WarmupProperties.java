@@ -0,0 +1,18 @@
+package com.example.mauro.devices_api.warmup;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+@Data
+@ConfigurationProperties("devices.warmup")
+public class WarmupProperties {
+    private boolean enabled = true;
+    // The warm-up stops after this many iterations or after max-duration, whichever comes first
+    private int iterations = 2000;
+    private Duration maxDuration = Duration.ofSeconds(30);
+    // Devices read by the point and multi-get reads of each iteration
+    private int sampleSize = 100;
+}
@@ -0,0 +1,173 @@
+package com.example.mauro.devices_api.warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.mauro.devices_api.dto.DeviceField;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.service.DeviceJsonStreamer;
+import com.example.mauro.devices_api.service.DeviceService;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.example.mauro.devices_api.sharding.ShardContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the read paths of the devices API against the real data before the
+ * application takes traffic, so Hibernate, Jackson and the JIT are warm for
+ * the first requests. Spring Boot reports readiness (ACCEPTING_TRAFFIC) only
+ * after all application runners have returned, so the readiness probe stays
+ * down until the warm-up is over.
+ *
+ * Only reads are issued, outside any request, so the warm-up writes nothing
+ * and does not show up in the request metrics. Listings use the brand with the
+ * fewest devices to keep each iteration short on large tables; the listings
+ * over all devices and by state run, sparse and streamed, only every
+ * TABLE_LISTING_INTERVAL iterations. With sharding the sample is taken shard
+ * by shard, so it does not depend on what the first shard holds. Sampling runs
+ * inside the warm-up, so a failing query there does not fail the startup.
+ */
+public class WarmupRunner implements ApplicationRunner, Ordered {
+    private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+
+    private static final Set<DeviceField> SPARSE_FIELDS = EnumSet.of(DeviceField.ID, DeviceField.NAME,
+            DeviceField.STATE);
+
+    private static final int TABLE_LISTING_INTERVAL = 100;
+
+    private static final String SAMPLE_IDS = "SELECT id FROM devices ORDER BY id LIMIT ?";
+
+    private static final String SMALLEST_BRAND = "SELECT b.name, COUNT(*) AS devices FROM brands b"
+            + " JOIN devices d ON d.brand_id = b.id GROUP BY b.name ORDER BY COUNT(*) LIMIT 1";
+
+    private final WarmupProperties properties;
+    private final DeviceService deviceService;
+    private final DeviceJsonStreamer deviceJsonStreamer;
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceShards shards;
+    private final ObjectMapper objectMapper;
+    private final Timer duration;
+
+    public WarmupRunner(WarmupProperties properties, DeviceService deviceService,
+            DeviceJsonStreamer deviceJsonStreamer, JdbcTemplate jdbcTemplate, DeviceShards shards,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.deviceService = deviceService;
+        this.deviceJsonStreamer = deviceJsonStreamer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.objectMapper = objectMapper;
+        this.duration = Timer.builder("devices.warmup.duration")
+                .description("Duration of the startup warm-up")
+                .register(meterRegistry);
+    }
+
+    // Last, after the read model has loaded and a startup import has run
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUp();
+    }
+
+    /**
+     * Returns the number of iterations run, 0 when there is no data to warm up
+     * with.
+     */
+    public int warmUp() {
+        long start = System.nanoTime();
+        long deadline = start + properties.getMaxDuration().toNanos();
+
+        int iterations = 0;
+        try {
+            Sample sample = sample();
+            if (sample == null) {
+                log.info("Warm-up skipped, there are no devices");
+                return 0;
+            }
+            while (iterations < properties.getIterations() && System.nanoTime() < deadline) {
+                iteration(iterations, sample);
+                iterations++;
+            }
+        } catch (RuntimeException | IOException ex) {
+            // A failed warm-up only costs latency, never the startup
+            log.warn("Warm-up stopped after {} iterations: {}", iterations, ex.getMessage());
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        duration.record(elapsed);
+        log.info("Warm-up finished: {} iterations in {} ms", iterations, elapsed.toMillis());
+        return iterations;
+    }
+
+    private record Sample(List<Long> ids, String brand) {
+    }
+
+    // Ids and the brand with the fewest devices, shard by shard; null without devices
+    private Sample sample() {
+        List<Long> ids = new ArrayList<>();
+        String brand = null;
+        long brandDevices = Long.MAX_VALUE;
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            try (ShardContext.Scope scope = shards.forShard(shard)) {
+                if (ids.size() < properties.getSampleSize()) {
+                    ids.addAll(jdbcTemplate.queryForList(SAMPLE_IDS, Long.class,
+                            properties.getSampleSize() - ids.size()));
+                }
+                for (Map<String, Object> smallest : jdbcTemplate.queryForList(SMALLEST_BRAND)) {
+                    long devices = ((Number) smallest.get("devices")).longValue();
+                    if (devices < brandDevices) {
+                        brand = (String) smallest.get("name");
+                        brandDevices = devices;
+                    }
+                }
+            }
+        }
+        return ids.isEmpty() || brand == null ? null : new Sample(ids, brand);
+    }
+
+    private void iteration(int iteration, Sample sample) throws IOException {
+        OutputStream discard = OutputStream.nullOutputStream();
+        List<Long> ids = sample.ids();
+        String brand = sample.brand();
+        Long id = ids.get(iteration % ids.size());
+        DeviceState state = DeviceState.values()[(int) (id % DeviceState.values().length)];
+
+        objectMapper.writeValue(discard, deviceService.getDeviceById(id).map(Device::convertToDTO).orElse(null));
+        objectMapper.writeValue(discard, deviceService.getDevicesByIds(ids).stream()
+                .map(Device::convertToDTO).toList());
+        objectMapper.writeValue(discard, deviceService.getDevicesByBrand(brand).stream()
+                .map(Device::convertToDTO).toList());
+        objectMapper.writeValue(discard, deviceService.getDevicesByBrandAndState(brand, state).stream()
+                .map(Device::convertToDTO).toList());
+        objectMapper.writeValue(discard, deviceService.getDevicesByBrand(brand, SPARSE_FIELDS));
+        deviceJsonStreamer.writeByBrand(brand, discard);
+
+        // The listings over the whole table, in their lightest forms and only
+        // every few iterations: each call reads every device
+        if (iteration % TABLE_LISTING_INTERVAL == 0) {
+            objectMapper.writeValue(discard, deviceService.getAllDevices(SPARSE_FIELDS));
+            objectMapper.writeValue(discard, deviceService.getDevicesByState(state, SPARSE_FIELDS));
+            deviceJsonStreamer.writeByState(state, discard);
+        }
+    }
+}
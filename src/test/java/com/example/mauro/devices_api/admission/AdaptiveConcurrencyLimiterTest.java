@@ -0,0 +1,197 @@
+package com.example.mauro.devices_api.admission;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    // Tomcat's default server.tomcat.threads.max
+    private static final int WORKER_THREADS = 200;
+
+    @Test
+    void tryAcquire_LimitAndQueueFull_Rejects() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 0, Duration.ofSeconds(1));
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+
+        assertThat(permit).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void tryAcquire_Queued_AdmittedWhenPermitReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10, 1, Duration.ofSeconds(1), 0.5,
+                Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThat(queued).isNotDone();
+
+        first.release();
+
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    void release_SlowCompletion_DecreasesLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 20, 0, Duration.ofMillis(1), 0.5,
+                Duration.ZERO);
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        Thread.sleep(5);
+        permit.release();
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void release_FastCompletionsAtLimit_IncreaseLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 0, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 20; i++) {
+            AdaptiveConcurrencyLimiter.Permit a = limiter.tryAcquire();
+            AdaptiveConcurrencyLimiter.Permit b = limiter.tryAcquire();
+            a.release();
+            b.release();
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(2);
+    }
+
+    @Test
+    void endpointClass_ClassifiesDeviceEndpoints() {
+        assertThat(EndpointClass.of(new MockHttpServletRequest("GET", "/api/v1/devices/42")))
+                .isEqualTo(EndpointClass.POINT_READ);
+        assertThat(EndpointClass.of(new MockHttpServletRequest("GET", "/api/v1/devices/state/IN_USE")))
+                .isEqualTo(EndpointClass.LIST_SCAN);
+        assertThat(EndpointClass.of(new MockHttpServletRequest("GET", "/api/v1/devices")))
+                .isEqualTo(EndpointClass.LIST_SCAN);
+        assertThat(EndpointClass.of(new MockHttpServletRequest("PUT", "/api/v1/devices/42")))
+                .isEqualTo(EndpointClass.WRITE);
+        assertThat(EndpointClass.of(new MockHttpServletRequest("GET", "/actuator/health"))).isNull();
+    }
+
+    @Test
+    void filter_ListScansSaturated_PointReadsStillAdmitted() throws Exception {
+        Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(EndpointClass.class);
+        limiters.put(EndpointClass.POINT_READ, limiter(1, 0, Duration.ofSeconds(1)));
+        limiters.put(EndpointClass.LIST_SCAN, limiter(1, 0, Duration.ofSeconds(1)));
+        limiters.put(EndpointClass.WRITE, limiter(1, 0, Duration.ofSeconds(1)));
+        AdmissionControlFilter filter = new AdmissionControlFilter(limiters);
+
+        // A list scan holds the only list permit
+        AdaptiveConcurrencyLimiter.Permit scan = limiters.get(EndpointClass.LIST_SCAN).tryAcquire();
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/devices/state/IN_USE"), rejected,
+                new MockFilterChain());
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isNotNull();
+
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/devices/42"), admitted, new MockFilterChain());
+        assertThat(admitted.getStatus()).isEqualTo(200);
+
+        scan.release();
+    }
+
+    @Test
+    void filter_DefaultLimitsListScansAndWritesSaturated_PointReadsGetWorkerThread() throws Exception {
+        AdmissionControlProperties properties = new AdmissionControlProperties();
+        // Worst case, the list scan and write limits have grown to their maximum
+        properties.getListScan().setInitialLimit(properties.getListScan().getMaxLimit());
+        properties.getWrite().setInitialLimit(properties.getWrite().getMaxLimit());
+        properties.checkFits(WORKER_THREADS);
+        Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(EndpointClass.class);
+        limiters.put(EndpointClass.POINT_READ, properties.getPointRead().newLimiter());
+        limiters.put(EndpointClass.LIST_SCAN, properties.getListScan().newLimiter());
+        limiters.put(EndpointClass.WRITE, properties.getWrite().newLimiter());
+        AdmissionControlFilter filter = new AdmissionControlFilter(limiters);
+
+        // Stands in for the Tomcat worker pool, requests beyond it wait for a thread
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        CountDownLatch scansDone = new CountDownLatch(1);
+        FilterChain slow = (request, response) -> {
+            try {
+                scansDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            for (int i = 0; i < WORKER_THREADS; i++) {
+                workers.submit(() -> serve(filter, "GET", "/api/v1/devices/state/IN_USE", slow));
+                workers.submit(() -> serve(filter, "PUT", "/api/v1/devices/42", slow));
+            }
+
+            Future<Integer> pointRead = workers.submit(
+                    () -> serve(filter, "GET", "/api/v1/devices/42", new MockFilterChain()));
+
+            assertThat(pointRead.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+            assertThat(limiters.get(EndpointClass.LIST_SCAN).getInFlight())
+                    .isEqualTo(properties.getListScan().getMaxLimit());
+        } finally {
+            scansDone.countDown();
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void checkFits_LimitsLargerThanWorkerPool_Throws() {
+        AdmissionControlProperties properties = new AdmissionControlProperties();
+        properties.getListScan().setMaxLimit(WORKER_THREADS);
+
+        assertThrows(IllegalStateException.class, () -> properties.checkFits(WORKER_THREADS));
+    }
+
+    @Test
+    void checkFits_InitialLimitAboveMaxLimit_Throws() {
+        AdmissionControlProperties properties = new AdmissionControlProperties();
+        properties.getWrite().setInitialLimit(properties.getWrite().getMaxLimit() + 1);
+
+        assertThrows(IllegalStateException.class, () -> properties.checkFits(WORKER_THREADS));
+    }
+
+    @Test
+    void checkFits_MinLimitAboveInitialLimit_Throws() {
+        AdmissionControlProperties properties = new AdmissionControlProperties();
+        properties.getPointRead().setMinLimit(properties.getPointRead().getInitialLimit() + 1);
+
+        assertThrows(IllegalStateException.class, () -> properties.checkFits(WORKER_THREADS));
+    }
+
+    private static int serve(AdmissionControlFilter filter, String method, String path, FilterChain chain)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(method, path), response, chain);
+        return response.getStatus();
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int limit, int maxQueue, Duration latencyTarget) {
+        return new AdaptiveConcurrencyLimiter(limit, 1, 100, maxQueue, latencyTarget, 0.5, Duration.ZERO);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mauro.devices_api.config;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.service.DeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and the replica. The
+ * replica is never replicated to, so where a row shows up tells which database
+ * served the read.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing_primary;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "devices.datasource.replica.url=jdbc:h2:mem:routing_replica;DB_CLOSE_DELAY=-1",
+        "devices.datasource.read-your-writes-window=5s"
+})
+@AutoConfigureMockMvc
+class ReadWriteRoutingDataSourceTest {
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate primary = new JdbcTemplate(primaryDataSource);
+        primary.update("DELETE FROM devices");
+        primary.update("DELETE FROM brands");
+
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("CREATE TABLE IF NOT EXISTS brands (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " name VARCHAR(255) NOT NULL UNIQUE)");
+        replica.execute("CREATE TABLE IF NOT EXISTS devices (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " name VARCHAR(255) NOT NULL, brand_id BIGINT NOT NULL REFERENCES brands (id),"
+                + " state VARCHAR(255), creation_time TIMESTAMP(6) NOT NULL)");
+        replica.update("DELETE FROM devices");
+        replica.update("DELETE FROM brands");
+        replica.update("INSERT INTO brands (id, name) VALUES (100, 'Dell')");
+        replica.update("INSERT INTO devices (name, brand_id, state, creation_time)"
+                + " VALUES ('replica-only', 100, 'AVAILABLE', CURRENT_TIMESTAMP)");
+    }
+
+    @Test
+    void readOnlyTransactions_GoToReplica_WritesGoToPrimary() {
+        deviceService.createDevice(Device.builder()
+                .name("primary-only")
+                .brand(Brand.builder().name("Dell").build())
+                .state(DeviceState.AVAILABLE)
+                .build());
+
+        List<Device> devices = deviceService.getDevicesByState(DeviceState.AVAILABLE);
+
+        assertThat(devices).extracting(Device::getName).containsExactly("replica-only");
+        assertThat(new JdbcTemplate(primaryDataSource).queryForList("SELECT name FROM devices", String.class))
+                .containsExactly("primary-only");
+    }
+
+    @Test
+    void readYourWrites_WriterReadsPrimary_OtherClientsReadReplica() throws Exception {
+        mockMvc.perform(post("/api/v1/devices")
+                        .header(ReadYourWritesFilter.CLIENT_ID_HEADER, "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"primary-only\",\"brand\":\"Dell\",\"state\":\"AVAILABLE\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/v1/devices/state/AVAILABLE")
+                        .header(ReadYourWritesFilter.CLIENT_ID_HEADER, "writer"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", hasItem("primary-only")));
+
+        mockMvc.perform(get("/api/v1/devices/state/AVAILABLE")
+                        .header(ReadYourWritesFilter.CLIENT_ID_HEADER, "someone-else"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", not(hasItem("primary-only"))))
+                .andExpect(jsonPath("$[*].name", hasItem("replica-only")));
+    }
+}
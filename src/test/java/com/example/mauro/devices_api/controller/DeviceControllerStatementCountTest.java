@@ -0,0 +1,167 @@
+package com.example.mauro.devices_api.controller;
+
+import static com.example.mauro.devices_api.jdbc.SqlStatementAssertions.rows;
+import static com.example.mauro.devices_api.jdbc.SqlStatementAssertions.statements;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Exact JDBC statement count of each DeviceController endpoint, with cold
+ * second-level caches. A mapping change that adds selects (N+1) fails here.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceControllerStatementCountTest {
+
+        @Container
+        static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+                        .withDatabaseName("restapi")
+                        .withUsername("postgres")
+                        .withPassword("postgres");
+
+        @DynamicPropertySource
+        static void configureProperties(DynamicPropertyRegistry registry) {
+                registry.add("spring.datasource.url", postgres::getJdbcUrl);
+                registry.add("spring.datasource.username", postgres::getUsername);
+                registry.add("spring.datasource.password", postgres::getPassword);
+                registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+                registry.add("devices.sql.debug-header", () -> "true");
+                registry.add("devices.sql.count-rows", () -> "true");
+        }
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private DeviceRepository deviceRepository;
+
+        @Autowired
+        private BrandRepository brandRepository;
+
+        @Autowired
+        private EntityManagerFactory entityManagerFactory;
+
+        private Device laptop;
+        private Device phone;
+
+        @BeforeEach
+        void setUp() {
+                deviceRepository.deleteAll();
+                brandRepository.deleteAll();
+                Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+                Brand apple = brandRepository.save(Brand.builder().name("Apple").build());
+                laptop = deviceRepository.save(newDevice("Laptop", dell, DeviceState.AVAILABLE));
+                phone = deviceRepository.save(newDevice("Phone", apple, DeviceState.IN_USE));
+                entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        }
+
+        @Test
+        void listings_OneStatement() throws Exception {
+                mockMvc.perform(get("/api/v1/devices"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1))
+                                .andExpect(rows(2));
+                mockMvc.perform(get("/api/v1/devices").param("fields", "id,name"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+                mockMvc.perform(get("/api/v1/devices/brand/Dell"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+                mockMvc.perform(get("/api/v1/devices/state/AVAILABLE"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+                mockMvc.perform(get("/api/v1/devices/stream/state/AVAILABLE"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+                mockMvc.perform(get("/api/v1/devices/brand/Dell/state/AVAILABLE"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1))
+                                .andExpect(rows(1));
+        }
+
+        @Test
+        void pointReads_OneStatement() throws Exception {
+                mockMvc.perform(get("/api/v1/devices/" + laptop.getId()))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+                mockMvc.perform(get("/api/v1/devices").param("ids", laptop.getId() + "," + phone.getId() + ",-1"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1))
+                                .andExpect(rows(2));
+                mockMvc.perform(post("/api/v1/devices/_mget")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + laptop.getId() + "]}"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(1));
+        }
+
+        @Test
+        void createDevice_ThreeStatements() throws Exception {
+                // device name check, brand lookup, insert
+                mockMvc.perform(post("/api/v1/devices")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"Tablet\",\"brand\":\"Dell\",\"state\":\"AVAILABLE\"}"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(3));
+        }
+
+        @Test
+        void updateDevice_FourStatements() throws Exception {
+                // locking select, brand load, brand lookup by name, update
+                mockMvc.perform(put("/api/v1/devices/" + laptop.getId())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"Laptop\",\"brand\":\"Dell\",\"state\":\"INACTIVE\"}"))
+                                .andExpect(status().isOk())
+                                .andExpect(statements(4));
+        }
+
+        @Test
+        void deleteDevice_ThreeStatements() throws Exception {
+                // locking select, brand load, delete
+                mockMvc.perform(delete("/api/v1/devices/" + laptop.getId()))
+                                .andExpect(status().isNoContent())
+                                .andExpect(statements(3));
+                mockMvc.perform(delete("/api/v1/devices/-1"))
+                                .andExpect(status().isNoContent())
+                                .andExpect(statements(1));
+        }
+
+        private static Device newDevice(String name, Brand brand, DeviceState state) {
+                return Device.builder()
+                                .name(name)
+                                .brand(brand)
+                                .state(state)
+                                .creationTime(LocalDateTime.now())
+                                .build();
+        }
+}
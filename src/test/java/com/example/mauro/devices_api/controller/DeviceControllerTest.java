@@ -14,7 +14,13 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -26,6 +32,7 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.dto.DeviceField;
 import com.example.mauro.devices_api.model.Brand;
 import com.example.mauro.devices_api.model.Device;
 import com.example.mauro.devices_api.model.DeviceState;
@@ -121,6 +128,40 @@ class DeviceControllerTest {
                                 .andExpect(jsonPath("$[0].state").value("AVAILABLE"));
         }
 
+        @Test
+        void getDevicesByBrandNameAndState_ReturnsDevices() throws Exception {
+                when(deviceService.getDevicesByBrandAndState("Dell", DeviceState.AVAILABLE))
+                                .thenReturn(Collections.singletonList(device));
+
+                mockMvc.perform(get("/api/v1/devices/brand/Dell/state/AVAILABLE")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].name").value("Laptop"))
+                                .andExpect(jsonPath("$[0].state").value("AVAILABLE"));
+        }
+
+        @Test
+        void getDevicesByState_WithFields_ReturnsSelectedFieldsOnly() throws Exception {
+                when(deviceService.getDevicesByState(DeviceState.AVAILABLE, EnumSet.of(DeviceField.ID, DeviceField.NAME)))
+                                .thenReturn(List.of(Map.of("id", 1L, "name", "Laptop")));
+
+                mockMvc.perform(get("/api/v1/devices/state/AVAILABLE")
+                                .param("fields", "id,name")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].id").value(1))
+                                .andExpect(jsonPath("$[0].name").value("Laptop"))
+                                .andExpect(jsonPath("$[0].brand").doesNotExist());
+        }
+
+        @Test
+        void getAllDevices_UnknownField_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(get("/api/v1/devices")
+                                .param("fields", "id,serial")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void createDevice_ValidInput_ReturnsCreated() throws Exception {
                 Device device = Device.builder()
@@ -166,6 +207,39 @@ class DeviceControllerTest {
                                 .andExpect(jsonPath("$.state").value("IN_USE"));
         }
 
+        @Test
+        void getDevicesByIds_ReturnsFoundInRequestOrderAndMissing() throws Exception {
+                Device phone = Device.builder()
+                                .id(2L)
+                                .name("Phone")
+                                .brand(brand)
+                                .state(DeviceState.IN_USE)
+                                .creationTime(now)
+                                .build();
+                when(deviceService.getDevicesByIds(Set.of(2L, 3L, 1L))).thenReturn(List.of(device, phone));
+
+                mockMvc.perform(get("/api/v1/devices")
+                                .param("ids", "2,3,1,2")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.found.length()").value(2))
+                                .andExpect(jsonPath("$.found[0].name").value("Phone"))
+                                .andExpect(jsonPath("$.found[1].name").value("Laptop"))
+                                .andExpect(jsonPath("$.missing[0]").value(3));
+        }
+
+        @Test
+        void multiGetDevices_TooManyIds_ReturnsBadRequest() throws Exception {
+                String ids = LongStream.rangeClosed(1, DeviceController.MAX_BATCH_SIZE + 1)
+                                .mapToObj(Long::toString)
+                                .collect(Collectors.joining(","));
+
+                mockMvc.perform(post("/api/v1/devices/_mget")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + ids + "]}"))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void deleteDevice_Exists_ReturnsNoContent() throws Exception {
                 when(deviceService.deleteDevice(1L)).thenReturn(true);
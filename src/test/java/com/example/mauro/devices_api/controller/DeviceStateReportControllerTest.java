@@ -0,0 +1,48 @@
+package com.example.mauro.devices_api.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.service.DeviceService;
+
+@WebMvcTest(DeviceStateReportController.class)
+class DeviceStateReportControllerTest {
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @MockitoBean
+        private DeviceService deviceService;
+
+        @Test
+        void reportState_ValidState_ReturnsAccepted() throws Exception {
+                mockMvc.perform(post("/api/v1/devices/1/state-report")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"state\":\"IN_USE\"}"))
+                                .andExpect(status().isAccepted());
+
+                verify(deviceService).reportState(1L, DeviceState.IN_USE);
+        }
+
+        @Test
+        void reportState_MissingState_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(post("/api/v1/devices/1/state-report")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{}"))
+                                .andExpect(status().isBadRequest());
+
+                verify(deviceService, never()).reportState(anyLong(), any());
+        }
+}
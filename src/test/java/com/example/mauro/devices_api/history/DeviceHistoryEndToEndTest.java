@@ -0,0 +1,194 @@
+package com.example.mauro.devices_api.history;
+
+import com.example.mauro.devices_api.dto.DeviceHistoryDTO;
+import com.example.mauro.devices_api.dto.DeviceStateTransitionDTO;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.example.mauro.devices_api.repository.DeviceStateTransitionRepository;
+import com.example.mauro.devices_api.service.DeviceService;
+import com.example.mauro.devices_api.service.DeviceStateReportBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * State changes through the API, the state report flush and the history
+ * endpoint, on PostgreSQL.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceHistoryEndToEndTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        // Flushes are triggered by the tests
+        registry.add("devices.state-report.flush-interval", () -> "1h");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceStateReportBuffer stateReports;
+
+    @Autowired
+    private DeviceStateHistory history;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private DeviceStateTransitionRepository historyRepository;
+
+    @BeforeEach
+    void setUp() {
+        stateReports.flush();
+        assertThat(history.awaitWritten(5000)).isTrue();
+        historyRepository.deleteAll();
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+    }
+
+    @Test
+    void createAndUpdate_RecordedWithClientId() throws Exception {
+        long id = create("Laptop", "billing");
+        update(id, DeviceState.IN_USE, "billing");
+        update(id, DeviceState.IN_USE, "billing");
+        assertThat(history.awaitWritten(5000)).isTrue();
+
+        DeviceHistoryDTO page = history(id, null, 50);
+
+        assertThat(page.getTransitions()).extracting(DeviceStateTransitionDTO::getToState)
+                .containsExactly(DeviceState.IN_USE, DeviceState.AVAILABLE);
+        assertThat(page.getTransitions()).extracting(DeviceStateTransitionDTO::getFromState)
+                .containsExactly(DeviceState.AVAILABLE, null);
+        assertThat(page.getTransitions()).extracting(DeviceStateTransitionDTO::getActor)
+                .containsOnly("billing");
+        assertThat(page.getNextBefore()).isNull();
+    }
+
+    @Test
+    void stateReportFlush_Recorded() throws Exception {
+        long id = create("Laptop", null);
+
+        deviceService.reportState(id, DeviceState.INACTIVE);
+        stateReports.flush();
+        assertThat(history.awaitWritten(5000)).isTrue();
+
+        DeviceStateTransitionDTO latest = history(id, null, 1).getTransitions().get(0);
+        assertThat(latest.getFromState()).isEqualTo(DeviceState.AVAILABLE);
+        assertThat(latest.getToState()).isEqualTo(DeviceState.INACTIVE);
+        assertThat(latest.getActor()).isEqualTo(DeviceStateReportBuffer.HISTORY_ACTOR);
+    }
+
+    @Test
+    void getStateHistory_KeysetPages_CoverHistoryOnce() throws Exception {
+        long id = create("Laptop", null);
+        DeviceState[] states = { DeviceState.IN_USE, DeviceState.AVAILABLE, DeviceState.INACTIVE };
+        for (int i = 0; i < 6; i++) {
+            update(id, states[i % states.length], null);
+        }
+        long otherId = create("Phone", null);
+        update(otherId, DeviceState.IN_USE, null);
+        assertThat(history.awaitWritten(5000)).isTrue();
+
+        List<Long> ids = new ArrayList<>();
+        Long before = null;
+        int pages = 0;
+        do {
+            DeviceHistoryDTO page = history(id, before, 3);
+            page.getTransitions().forEach(transition -> ids.add(transition.getId()));
+            before = page.getNextBefore();
+            pages++;
+        } while (before != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(ids).hasSize(7).doesNotHaveDuplicates();
+        assertThat(ids).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+        assertThat(historyRepository.count()).isEqualTo(9);
+    }
+
+    @Test
+    void getStateHistory_LimitOutOfRange_BadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/devices/1/history").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/devices/1/history").param("limit", "501"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long create(String name, String clientId) throws Exception {
+        var request = post("/api/v1/devices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"brand\":\"Dell\",\"state\":\"AVAILABLE\"}");
+        if (clientId != null) {
+            request.header("X-Client-Id", clientId);
+        }
+        String body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("id").asLong();
+    }
+
+    private void update(long id, DeviceState state, String clientId) throws Exception {
+        var request = put("/api/v1/devices/" + id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"state\":\"" + state + "\"}");
+        if (clientId != null) {
+            request.header("X-Client-Id", clientId);
+        }
+        mockMvc.perform(request).andExpect(status().isOk());
+    }
+
+    private DeviceHistoryDTO history(long id, Long before, int limit) throws Exception {
+        var request = get("/api/v1/devices/" + id + "/history").param("limit", Integer.toString(limit));
+        if (before != null) {
+            request.param("before", before.toString());
+        }
+        String body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, DeviceHistoryDTO.class);
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.mauro.devices_api.history;
+
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The queue, its bound and the writer, against a mocked JdbcTemplate. The
+ * database side is covered by DeviceHistoryEndToEndTest.
+ */
+class DeviceStateHistoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private final List<Object[]> rows = new CopyOnWriteArrayList<>();
+    private volatile boolean databaseDown;
+    private volatile boolean transactionsFail;
+    private volatile boolean rowsRejected;
+    private DeviceStateHistory history;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            if (databaseDown) {
+                throw new DataAccessResourceFailureException("database down");
+            }
+            if (rowsRejected) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            List<Object[]> batch = invocation.getArgument(1);
+            rows.addAll(batch);
+            return new int[batch.size()];
+        });
+        HistoryProperties properties = new HistoryProperties();
+        properties.setCapacity(3);
+        properties.setBatchSize(2);
+        properties.setFlushInterval(Duration.ofMillis(10));
+        properties.setMaxWait(Duration.ofMillis(100));
+        // What JpaTransactionManager.doBegin throws when no connection can be had
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            if (transactionsFail) {
+                throw new CannotCreateTransactionException("Could not open JPA EntityManager for transaction");
+            }
+            return null;
+        });
+        history = new DeviceStateHistory(properties, jdbcTemplate, transactionManager, DeviceShards.unsharded(),
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        databaseDown = false;
+        transactionsFail = false;
+        rowsRejected = false;
+        history.destroy();
+    }
+
+    @Test
+    void recordAfterCommit_Committed_WrittenInBatches() {
+        TransactionSynchronizationManager.initSynchronization();
+        history.recordAfterCommit(1L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        history.recordAfterCommit(2L, null, DeviceState.AVAILABLE, "billing");
+        assertThat(history.queued()).isZero();
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(history.awaitWritten(5000)).isTrue();
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsSubsequence(1L, "AVAILABLE", "IN_USE", "billing");
+        assertThat(rows.get(1)[1]).isNull();
+    }
+
+    @Test
+    void recordAfterCommit_RolledBack_NothingQueued() {
+        TransactionSynchronizationManager.initSynchronization();
+        history.recordAfterCommit(1L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(history.queued()).isZero();
+        assertThat(rows).isEmpty();
+    }
+
+    @Test
+    void recordAfterCommit_SameState_NotRecorded() {
+        history.recordAfterCommit(1L, DeviceState.IN_USE, DeviceState.IN_USE, "billing");
+
+        assertThat(history.queued()).isZero();
+    }
+
+    @Test
+    void recordAfterCommit_QueueFull_FailsAfterMaxWait() {
+        databaseDown = true;
+        for (int i = 1; i <= 3; i++) {
+            history.recordAfterCommit(i, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        }
+
+        long start = System.nanoTime();
+        assertThrows(HistoryQueueFullException.class,
+                () -> history.recordAfterCommit(4L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing"));
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(100).toNanos());
+
+        // The failed batch is retried, room comes back once it is written
+        databaseDown = false;
+        assertThat(history.awaitWritten(5000)).isTrue();
+        history.recordAfterCommit(4L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        assertThat(history.awaitWritten(5000)).isTrue();
+        assertThat(rows).extracting(row -> row[0]).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void writer_TransactionCannotBegin_RetriesUntilDatabaseBack() {
+        transactionsFail = true;
+        for (int i = 1; i <= 3; i++) {
+            history.recordAfterCommit(i, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        }
+        assertThat(history.awaitWritten(100)).isFalse();
+        assertThrows(HistoryQueueFullException.class,
+                () -> history.recordAfterCommit(4L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing"));
+
+        transactionsFail = false;
+        assertThat(history.awaitWritten(5000)).isTrue();
+        history.recordAfterCommit(4L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        assertThat(history.awaitWritten(5000)).isTrue();
+        assertThat(rows).extracting(row -> row[0]).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void writer_RowsRejected_DropsBatchAndGoesOn() {
+        rowsRejected = true;
+        history.recordAfterCommit(1L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        assertThat(history.awaitWritten(5000)).isTrue();
+
+        rowsRejected = false;
+        history.recordAfterCommit(2L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        assertThat(history.awaitWritten(5000)).isTrue();
+        assertThat(rows).extracting(row -> row[0]).containsExactly(2L);
+    }
+
+    @Test
+    void beforeCommit_QueueFull_FailsTransaction() {
+        databaseDown = true;
+        for (int i = 1; i <= 3; i++) {
+            history.recordAfterCommit(i, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        }
+        TransactionSynchronizationManager.initSynchronization();
+        history.recordAfterCommit(4L, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertThrows(HistoryQueueFullException.class, () -> synchronizations.forEach(s -> s.beforeCommit(false)));
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThat(history.queued()).isEqualTo(3);
+    }
+
+    @Test
+    void destroy_WritesQueue() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            history.recordAfterCommit(i, DeviceState.AVAILABLE, DeviceState.IN_USE, "billing");
+        }
+
+        history.destroy();
+
+        assertThat(rows).hasSize(3);
+        assertThat(history.queued()).isZero();
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(s -> s.beforeCommit(false));
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(s -> s.afterCompletion(status));
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.mauro.devices_api.jdbc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+
+/**
+ * MockMvc matchers on the statement accounting headers. The application under
+ * test needs {@code devices.sql.debug-header=true}.
+ */
+public final class SqlStatementAssertions {
+
+    private SqlStatementAssertions() {
+    }
+
+    /**
+     * Exactly this many JDBC statements were executed for the request.
+     */
+    public static ResultMatcher statements(int expected) {
+        return result -> assertThat(result.getResponse().getHeader(SqlStatementFilter.STATEMENTS_HEADER))
+                .as("JDBC statements of %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isEqualTo(Integer.toString(expected));
+    }
+
+    /**
+     * Exactly this many rows were read or written for the request. Rows read are
+     * only counted with {@code devices.sql.count-rows=true}.
+     */
+    public static ResultMatcher rows(long expected) {
+        return result -> assertThat(result.getResponse().getHeader(SqlStatementFilter.ROWS_HEADER))
+                .as("rows of %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isEqualTo(Long.toString(expected));
+    }
+}
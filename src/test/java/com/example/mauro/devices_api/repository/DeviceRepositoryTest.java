@@ -100,4 +100,28 @@ class DeviceRepositoryTest {
         assertThat(devices).hasSize(2);
         assertThat(devices).extracting(Device::getName).containsExactlyInAnyOrder("Laptop", "Phone");
     }
-}
\ No newline at end of file
+
+    @Test
+    void findAllByIdIn_ReturnsExistingDevices() {
+
+        brandRepository.save(brand1);
+
+        Device device1 = deviceRepository.save(Device.builder()
+                .name("Laptop")
+                .brand(brand1)
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build());
+        Device device2 = deviceRepository.save(Device.builder()
+                .name("Monitor")
+                .brand(brand1)
+                .state(DeviceState.INACTIVE)
+                .creationTime(LocalDateTime.now())
+                .build());
+
+        List<Device> devices = deviceRepository.findAllByIdIn(List.of(device2.getId(), -1L, device1.getId()));
+
+        assertThat(devices).extracting(Device::getName).containsExactlyInAnyOrder("Laptop", "Monitor");
+        assertThat(deviceRepository.findAllByIdIn(List.of())).isEmpty();
+    }
+}
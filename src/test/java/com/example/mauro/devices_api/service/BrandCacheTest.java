@@ -0,0 +1,148 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+
+import static com.example.mauro.devices_api.service.DeviceImportServiceTest.csv;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements per device read with a cold and a warm Brand cache, and
+ * invalidation of cached brand lookups on inserts. Listings fetch the brand in
+ * their own select, so only the point loads of a device go through the cache.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class BrandCacheTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceImportService deviceImportService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SessionFactory sessionFactory;
+    private Statistics statistics;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        statistics = sessionFactory.getStatistics();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void findWithLockById_WarmBrandCache_FewerStatements() {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        Long id = deviceRepository.save(newDevice("Laptop", dell)).getId();
+
+        sessionFactory.getCache().evictEntityData(Brand.class);
+        statistics.clear();
+        transactionTemplate.executeWithoutResult(status -> deviceRepository.findWithLockById(id));
+        long cold = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        transactionTemplate.executeWithoutResult(status -> deviceRepository.findWithLockById(id));
+        long warm = statistics.getPrepareStatementCount();
+
+        assertThat(cold).as("findWithLockById statements, cold brand cache").isEqualTo(2);
+        assertThat(warm).as("findWithLockById statements, warm brand cache").isEqualTo(1);
+        assertThat(statistics.getCacheRegionStatistics(Brand.CACHE_REGION).getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void getDevicesByState_BrandsFetchedInSameSelect() {
+        String[] brands = { "Dell", "Apple", "Lenovo", "HP", "Asus" };
+        for (String name : brands) {
+            Brand brand = brandRepository.save(Brand.builder().name(name).build());
+            for (int i = 0; i < 4; i++) {
+                deviceRepository.save(newDevice(name + " " + i, brand));
+            }
+        }
+
+        sessionFactory.getCache().evictEntityData(Brand.class);
+        statistics.clear();
+        assertThat(deviceService.getDevicesByState(DeviceState.AVAILABLE)).hasSize(20);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findByName_CachedMiss_InvalidatedByInsert() {
+        assertThat(brandRepository.findByName("Dell")).isEmpty();
+        statistics.clear();
+        assertThat(brandRepository.findByName("Dell")).isEmpty();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+
+        brandRepository.save(Brand.builder().name("Dell").build());
+
+        assertThat(brandRepository.findByName("Dell")).isPresent();
+    }
+
+    @Test
+    void findByName_CachedMiss_InvalidatedByImport() {
+        assertThat(brandRepository.findByName("Apple")).isEmpty();
+
+        deviceImportService.importCsv(csv("name,brand,state,creation_time\nPhone,Apple,AVAILABLE,\n"));
+
+        assertThat(brandRepository.findByName("Apple")).isPresent();
+    }
+
+    private static Device newDevice(String name, Brand brand) {
+        return Device.builder()
+                .name(name)
+                .brand(brand)
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceField;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sparse listings select only the requested columns. The benchmark compares
+ * response bytes and query time of a full and an id,name listing; run it with
+ * {@code mvn test -Dtest=DeviceFieldsTest -Dbenchmark=true}.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceFieldsTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceFieldsTest.class);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getDevicesByState_SelectedFieldsOnly() {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        Device laptop = deviceRepository.save(newDevice("Laptop", dell, DeviceState.AVAILABLE));
+        deviceRepository.save(newDevice("Tablet", dell, DeviceState.IN_USE));
+
+        statistics.clear();
+        List<Map<String, Object>> devices = deviceService.getDevicesByState(DeviceState.AVAILABLE,
+                EnumSet.of(DeviceField.ID, DeviceField.NAME));
+
+        assertThat(devices).containsExactly(Map.of("id", laptop.getId(), "name", "Laptop"));
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void getDevicesByBrand_FiltersOnBrandWithoutSelectingIt() {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        Brand apple = brandRepository.save(Brand.builder().name("Apple").build());
+        deviceRepository.save(newDevice("Laptop", dell, DeviceState.AVAILABLE));
+        deviceRepository.save(newDevice("Phone", apple, DeviceState.IN_USE));
+
+        assertThat(deviceService.getDevicesByBrand("Apple", EnumSet.of(DeviceField.NAME, DeviceField.STATE)))
+                .containsExactly(Map.of("name", "Phone", "state", DeviceState.IN_USE));
+        assertThat(deviceService.getAllDevices(EnumSet.of(DeviceField.BRAND)))
+                .extracting(row -> row.get("brand"))
+                .containsExactlyInAnyOrder("Dell", "Apple");
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark_FullVersusSparseListing() throws Exception {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        jdbcTemplate.update("INSERT INTO devices (name, brand_id, state, creation_time)"
+                + " SELECT 'device-' || i, ?, 'AVAILABLE', now() FROM generate_series(1, 50000) i", dell.getId());
+
+        Set<DeviceField> idAndName = EnumSet.of(DeviceField.ID, DeviceField.NAME);
+        Supplier<Object> full = () -> deviceService.getDevicesByState(DeviceState.AVAILABLE).stream()
+                .map(Device::convertToDTO).toList();
+        Supplier<Object> sparse = () -> deviceService.getDevicesByState(DeviceState.AVAILABLE, idAndName);
+
+        long fullBytes = objectMapper.writeValueAsBytes(full.get()).length;
+        long sparseBytes = objectMapper.writeValueAsBytes(sparse.get()).length;
+        long fullMillis = time(full);
+        long sparseMillis = time(sparse);
+
+        log.info("state listing of 50000 devices: full {} bytes {} ms, fields=id,name {} bytes {} ms",
+                fullBytes, fullMillis, sparseBytes, sparseMillis);
+        assertThat(sparseBytes).isLessThan(fullBytes);
+    }
+
+    // Median of 20 runs after 5 warm-up runs
+    private static long time(Supplier<Object> query) {
+        for (int i = 0; i < 5; i++) {
+            query.get();
+        }
+        long[] millis = new long[20];
+        for (int i = 0; i < millis.length; i++) {
+            long start = System.nanoTime();
+            query.get();
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis[millis.length / 2];
+    }
+
+    private static Device newDevice(String name, Brand brand, DeviceState state) {
+        return Device.builder()
+                .name(name)
+                .brand(brand)
+                .state(state)
+                .creationTime(LocalDateTime.now())
+                .build();
+    }
+}
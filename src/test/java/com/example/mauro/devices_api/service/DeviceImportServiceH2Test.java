@@ -0,0 +1,109 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceImportResultDTO;
+import com.example.mauro.devices_api.history.DeviceStateHistory;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.model.DeviceStateTransition;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.example.mauro.devices_api.repository.DeviceStateTransitionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static com.example.mauro.devices_api.service.DeviceImportServiceTest.CSV;
+import static com.example.mauro.devices_api.service.DeviceImportServiceTest.csv;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:devices_import;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class DeviceImportServiceH2Test {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportServiceH2Test.class);
+
+    @Autowired
+    private DeviceImportService deviceImportService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private DeviceStateTransitionRepository historyRepository;
+
+    @BeforeEach
+    void setUp() {
+        historyRepository.deleteAll();
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        deviceRepository.save(Device.builder()
+                .name("Laptop")
+                .brand(dell)
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build());
+    }
+
+    @Test
+    void importCsv_BatchPath_MergesAndReportsDuplicates() {
+        DeviceImportResultDTO result = deviceImportService.importCsv(csv(CSV));
+
+        assertThat(result.getLoadPath()).isEqualTo("batch");
+        assertThat(result.getRowsRead()).isEqualTo(5);
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getBrandsCreated()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getDuplicateNames()).containsExactly("Laptop", "Phone");
+
+        Device phone = deviceRepository.findByName("Phone").orElseThrow();
+        assertThat(phone.getState()).isEqualTo(DeviceState.IN_USE);
+        assertThat(deviceRepository.findByName("Watch, 2nd gen")).isPresent();
+
+        Device watch = deviceRepository.findByName("Watch, 2nd gen").orElseThrow();
+        assertThat(historyRepository.findAll())
+                .extracting(DeviceStateTransition::getDeviceId, DeviceStateTransition::getFromState,
+                        DeviceStateTransition::getToState, DeviceStateTransition::getActor)
+                .containsExactlyInAnyOrder(
+                        tuple(phone.getId(), null, DeviceState.IN_USE, DeviceStateHistory.SYSTEM_ACTOR),
+                        tuple(watch.getId(), null, DeviceState.INACTIVE, DeviceStateHistory.SYSTEM_ACTOR));
+    }
+
+    @Test
+    void importCsv_LargeFile_ReportsThroughput() {
+        int rows = 20_000;
+        StringBuilder csv = new StringBuilder("name,brand,state,creation_time\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("device-").append(i).append(",brand-").append(i % 100).append(",AVAILABLE,\n");
+        }
+
+        DeviceImportResultDTO result = deviceImportService.importCsv(csv(csv.toString()));
+
+        assertThat(result.getImported()).isEqualTo(rows);
+        log.info("Batched import: {} rows in {} ms ({} rows/sec)",
+                result.getRowsRead(), result.getElapsedMillis(), result.getRowsPerSecond());
+    }
+
+    @Test
+    void parseCsvLine_HandlesQuotesAndNulls() {
+        assertThat(DeviceImportService.parseCsvLine("a,\"b,\"\"c\"\"\",,\"\""))
+                .isEqualTo(Arrays.asList("a", "b,\"c\"", null, ""));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceImportResultDTO;
+import com.example.mauro.devices_api.history.DeviceStateHistory;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.model.DeviceStateTransition;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.example.mauro.devices_api.repository.DeviceStateTransitionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceImportServiceTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportServiceTest.class);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+    }
+
+    static final String CSV = """
+            name,brand,state,creation_time
+            Laptop,Dell,AVAILABLE,
+            Phone,Apple,IN_USE,2024-01-02 10:00:00
+            Phone,Apple,AVAILABLE,
+            Tablet,Samsung,BROKEN,
+            "Watch, 2nd gen",Dell,INACTIVE,
+            """;
+
+    @Autowired
+    private DeviceImportService deviceImportService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private DeviceStateTransitionRepository historyRepository;
+
+    @BeforeEach
+    void setUp() {
+        historyRepository.deleteAll();
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        deviceRepository.save(Device.builder()
+                .name("Laptop")
+                .brand(dell)
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build());
+    }
+
+    @Test
+    void importCsv_CopyPath_MergesAndReportsDuplicates() {
+        DeviceImportResultDTO result = deviceImportService.importCsv(csv(CSV));
+
+        assertThat(result.getLoadPath()).isEqualTo("copy");
+        assertThat(result.getRowsRead()).isEqualTo(5);
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getBrandsCreated()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getDuplicates()).isEqualTo(2);
+        assertThat(result.getDuplicateNames()).containsExactly("Laptop", "Phone");
+
+        Device phone = deviceRepository.findByName("Phone").orElseThrow();
+        assertThat(phone.getBrand().getName()).isEqualTo("Apple");
+        assertThat(phone.getState()).isEqualTo(DeviceState.IN_USE);
+        assertThat(phone.getCreationTime()).isEqualTo(LocalDateTime.of(2024, 1, 2, 10, 0));
+        assertThat(deviceRepository.findByName("Watch, 2nd gen")).isPresent();
+
+        Device watch = deviceRepository.findByName("Watch, 2nd gen").orElseThrow();
+        assertThat(historyRepository.findAll())
+                .extracting(DeviceStateTransition::getDeviceId, DeviceStateTransition::getFromState,
+                        DeviceStateTransition::getToState, DeviceStateTransition::getActor)
+                .containsExactlyInAnyOrder(
+                        tuple(phone.getId(), null, DeviceState.IN_USE, DeviceStateHistory.SYSTEM_ACTOR),
+                        tuple(watch.getId(), null, DeviceState.INACTIVE, DeviceStateHistory.SYSTEM_ACTOR));
+        assertThat(brandRepository.findByName("Samsung")).isEmpty();
+    }
+
+    @Test
+    void importCsv_LargeFile_ReportsThroughput() {
+        int rows = 100_000;
+        StringBuilder csv = new StringBuilder("name,brand,state,creation_time\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("device-").append(i).append(",brand-").append(i % 100).append(",AVAILABLE,\n");
+        }
+
+        DeviceImportResultDTO result = deviceImportService.importCsv(csv(csv.toString()));
+
+        assertThat(result.getImported()).isEqualTo(rows);
+        assertThat(result.getBrandsCreated()).isEqualTo(100);
+        log.info("COPY import: {} rows in {} ms ({} rows/sec)",
+                result.getRowsRead(), result.getElapsedMillis(), result.getRowsPerSecond());
+    }
+
+    static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
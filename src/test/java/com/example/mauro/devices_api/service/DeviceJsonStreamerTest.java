@@ -0,0 +1,158 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The streamed listings are the same JSON as the DTO listings. The benchmark
+ * compares the bytes allocated per row of both paths at 100000 rows; run it
+ * with {@code mvn test -Dtest=DeviceJsonStreamerTest -Dbenchmark=true}.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceJsonStreamerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceJsonStreamerTest.class);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        // Measures the listings themselves, without the statement accounting proxy
+        registry.add("devices.sql.accounting.enabled", () -> "false");
+    }
+
+    @Autowired
+    private DeviceJsonStreamer deviceJsonStreamer;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+    }
+
+    @Test
+    void writeByState_SameJsonAsDtoListing() throws Exception {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        Brand apple = brandRepository.save(Brand.builder().name("Apple \"Inc\"").build());
+        deviceRepository.save(newDevice("Laptop", dell, DeviceState.AVAILABLE));
+        deviceRepository.save(newDevice("Phone", apple, DeviceState.AVAILABLE));
+        deviceRepository.save(newDevice("Tablet", apple, DeviceState.IN_USE));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        deviceJsonStreamer.writeByState(DeviceState.AVAILABLE, streamed);
+        String mapped = objectMapper.writeValueAsString(deviceService.getDevicesByState(DeviceState.AVAILABLE)
+                .stream().map(Device::convertToDTO).toList());
+
+        TypeReference<List<Map<String, Object>>> rows = new TypeReference<>() {
+        };
+        assertThat(objectMapper.readValue(streamed.toByteArray(), rows))
+                .hasSize(2)
+                .containsExactlyInAnyOrderElementsOf(objectMapper.readValue(mapped, rows));
+    }
+
+    @Test
+    void writeByBrand_UnknownBrand_EmptyArray() throws Exception {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        deviceJsonStreamer.writeByBrand("Unknown", streamed);
+        assertThat(streamed.toString()).isEqualTo("[]");
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark_AllocationPerRow() throws Exception {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        jdbcTemplate.update("INSERT INTO devices (name, brand_id, state, creation_time)"
+                + " SELECT 'device-' || i, ?, 'AVAILABLE', now() FROM generate_series(1, 100000) i", dell.getId());
+
+        CheckedRunnable mapped = () -> objectMapper.writeValue(OutputStream.nullOutputStream(),
+                deviceService.getDevicesByState(DeviceState.AVAILABLE).stream().map(Device::convertToDTO).toList());
+        CheckedRunnable streamed = () -> deviceJsonStreamer.writeByState(DeviceState.AVAILABLE,
+                OutputStream.nullOutputStream());
+
+        long mappedBytes = allocatedBytes(mapped);
+        long streamedBytes = allocatedBytes(streamed);
+
+        log.info("state listing of 100000 devices: DTO path {} bytes/row, streaming {} bytes/row",
+                mappedBytes / 100_000, streamedBytes / 100_000);
+        assertThat(streamedBytes).isLessThan(mappedBytes);
+    }
+
+    // Bytes allocated by this thread in the last of 5 runs
+    private static long allocatedBytes(CheckedRunnable listing) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (int i = 0; i < 5; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            listing.run();
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return allocated;
+    }
+
+    private interface CheckedRunnable {
+        void run() throws Exception;
+    }
+
+    private static Device newDevice(String name, Brand brand, DeviceState state) {
+        return Device.builder()
+                .name(name)
+                .brand(brand)
+                .state(state)
+                .creationTime(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Thundering herd: many clients ask for the same device or the same state list
+ * at the same instant. Prints the number of queries with and without
+ * coalescing.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceReadCoalescingTest {
+
+    private static final int CLIENTS = 200;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Device device;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Brand brand = brandRepository.save(Brand.builder().name("Dell").build());
+        device = deviceRepository.save(Device.builder()
+                .name("Laptop")
+                .brand(brand)
+                .state(DeviceState.IN_USE)
+                .creationTime(LocalDateTime.now())
+                .build());
+    }
+
+    @Test
+    void thunderingHerd_GetDeviceById_FewerQueries() throws Exception {
+        long uncoalesced = herd(() -> deviceRepository.findById(device.getId()));
+        long coalesced = herd(() -> deviceService.getDeviceById(device.getId()));
+
+        assertThat(uncoalesced).isEqualTo(CLIENTS);
+        assertThat(coalesced).as("getDeviceById x%d, coalesced queries", CLIENTS).isLessThan(CLIENTS);
+    }
+
+    @Test
+    void thunderingHerd_GetDevicesByState_FewerQueries() throws Exception {
+        long uncoalesced = herd(() -> deviceRepository.findByState(DeviceState.IN_USE));
+        long coalesced = herd(() -> deviceService.getDevicesByState(DeviceState.IN_USE));
+
+        assertThat(coalesced).as("getDevicesByState x%d, coalesced queries", CLIENTS).isLessThan(uncoalesced);
+    }
+
+    @Test
+    void readAfterWrite_SeesTheWrite() {
+        deviceService.getDeviceById(device.getId());
+
+        deviceService.updateDevice(device.getId(),
+                DeviceDTO.builder().name("Laptop").brand("Dell").state(DeviceState.AVAILABLE).build());
+
+        assertThat(deviceService.getDeviceById(device.getId())).get()
+                .extracting(Device::getState).isEqualTo(DeviceState.AVAILABLE);
+        assertThat(deviceService.getDevicesByState(DeviceState.IN_USE)).isEmpty();
+    }
+
+    // Runs the read from CLIENTS threads released at once, returns the number of
+    // statements executed
+    private long herd(Runnable read) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(CLIENTS);
+            statistics.clear();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    read.run();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return statistics.getPrepareStatementCount();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
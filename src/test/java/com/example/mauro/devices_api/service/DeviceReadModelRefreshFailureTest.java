@@ -0,0 +1,61 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.model.DeviceState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * A refresh that cannot read its rows, against a mocked JdbcTemplate. It runs
+ * after the write committed, so it must neither fail the write nor leave the
+ * old rows in the model.
+ */
+class DeviceReadModelRefreshFailureTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DeviceReadModel readModel;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        readModel = new DeviceReadModel(true, jdbcTemplate, mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry());
+        readModel.load();
+        doThrow(new DataAccessResourceFailureException("connection reset")).when(jdbcTemplate)
+                .query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void refreshAfterCommit_ReadFails_Reloads() {
+        readModel.refreshAfterCommit(List.of(1L));
+
+        assertThat(readModel.isLoaded()).isTrue();
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void refreshAfterCommit_ReadAndReloadFail_Unloaded() {
+        doThrow(new DataAccessResourceFailureException("connection reset")).when(jdbcTemplate)
+                .query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        readModel.refreshAfterCommit(List.of(1L));
+
+        assertThat(readModel.isLoaded()).isFalse();
+        assertThat(readModel.findByState(DeviceState.AVAILABLE)).isNull();
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.exception.ResourceCannotBeDeletedException;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.example.mauro.devices_api.service.DeviceImportServiceTest.csv;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The read model answers the listings like the database does, stays
+ * consistent under concurrent writes, and its size per device.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceReadModelTest {
+
+    private static final String[] BRANDS = { "Dell", "Apple", "Lenovo", "HP" };
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("devices.read-model.enabled", () -> "true");
+        registry.add("devices.state-report.flush-interval", () -> "1h");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceReadModel readModel;
+
+    @Autowired
+    private DeviceImportService deviceImportService;
+
+    @Autowired
+    private DeviceStateReportBuffer stateReports;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+    }
+
+    @Test
+    void listings_MatchDatabase() {
+        for (String name : BRANDS) {
+            Brand brand = brandRepository.save(Brand.builder().name(name).build());
+            for (DeviceState state : DeviceState.values()) {
+                deviceRepository.save(Device.builder()
+                        .name(name + " " + state)
+                        .brand(brand)
+                        .state(state)
+                        .creationTime(LocalDateTime.now())
+                        .build());
+            }
+        }
+        readModel.load();
+
+        assertThat(readModel.isLoaded()).isTrue();
+        assertThat(readModel.findByBrandNameAndState("Apple", DeviceState.IN_USE))
+                .extracting(Device::convertToDTO)
+                .containsExactlyInAnyOrderElementsOf(dtos(deviceRepository.findByBrandNameAndState("Apple", DeviceState.IN_USE)));
+        assertConsistentWithDatabase();
+        assertThat(readModel.findByBrandName("Unknown")).isEmpty();
+    }
+
+    @Test
+    void writes_AppliedAfterCommit() {
+        readModel.load();
+        Device laptop = deviceService.createDevice(Device.builder()
+                .name("Laptop")
+                .brand(Brand.builder().name("Dell").build())
+                .state(DeviceState.AVAILABLE)
+                .build());
+        assertThat(deviceService.getDevicesByState(DeviceState.AVAILABLE)).extracting(Device::getName)
+                .containsExactly("Laptop");
+
+        deviceService.updateDevice(laptop.getId(), DeviceDTO.builder().name("Laptop").brand("Dell")
+                .state(DeviceState.INACTIVE).build());
+        assertThat(deviceService.getDevicesByState(DeviceState.AVAILABLE)).isEmpty();
+
+        stateReports.report(laptop.getId(), DeviceState.AVAILABLE);
+        stateReports.flush();
+        assertThat(deviceService.getDevicesByBrandAndState("Dell", DeviceState.AVAILABLE)).hasSize(1);
+
+        deviceImportService.importCsv(csv("name,brand,state,creation_time\nPhone,Apple,IN_USE,\n"));
+        assertThat(deviceService.getDevicesByBrand("Apple")).extracting(Device::getName).containsExactly("Phone");
+
+        deviceService.deleteDevice(laptop.getId());
+        assertConsistentWithDatabase();
+    }
+
+    @Test
+    void concurrentWritesAndReads_StayConsistent() throws Exception {
+        // Created up front, concurrent creates of a new brand would conflict on its name
+        for (String name : BRANDS) {
+            brandRepository.save(Brand.builder().name(name).build());
+        }
+        readModel.load();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> write(thread, 150)));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        String brand = BRANDS[random.nextInt(BRANDS.length)];
+                        DeviceState state = DeviceState.values()[random.nextInt(DeviceState.values().length)];
+                        assertThat(readModel.findByBrandNameAndState(brand, state))
+                                .allSatisfy(device -> {
+                                    assertThat(device.getBrand().getName()).isEqualTo(brand);
+                                    assertThat(device.getState()).isEqualTo(state);
+                                });
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(5, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        assertConsistentWithDatabase();
+    }
+
+    @Test
+    void memoryPerDevice() {
+        Long dell = brandRepository.save(Brand.builder().name("Dell").build()).getId();
+        Long apple = brandRepository.save(Brand.builder().name("Apple").build()).getId();
+        jdbcTemplate.update("INSERT INTO devices (name, brand_id, state, creation_time)"
+                + " SELECT 'device-' || i, CASE WHEN i % 2 = 0 THEN ? ELSE ? END,"
+                + " (ARRAY['AVAILABLE', 'IN_USE', 'INACTIVE'])[1 + i % 3], now()"
+                + " FROM generate_series(1, 100000) i", dell, apple);
+        readModel.load();
+
+        long bytesPerDevice = readModel.estimatedBytes() / readModel.size();
+        assertThat(readModel.size()).isEqualTo(100_000);
+        assertThat(bytesPerDevice).as("read model bytes per device, %d bytes in all", readModel.estimatedBytes())
+                .isLessThan(150);
+    }
+
+    @Test
+    void refresh_OlderReadAppliedLast_Ignored() {
+        Long id = deviceService.createDevice(newDevice("Laptop")).getId();
+        readModel.load();
+        Set<Long> ids = Set.of(id);
+
+        long staleStamp = readModel.beginRefresh();
+        List<DeviceReadModel.Row> stale = readModel.readRows(ids);
+        jdbcTemplate.update("UPDATE devices SET state = 'IN_USE' WHERE id = ?", id);
+        long freshStamp = readModel.beginRefresh();
+        readModel.endRefresh(ids, readModel.readRows(ids), freshStamp);
+        readModel.endRefresh(ids, stale, staleStamp);
+
+        assertThat(readModel.findByState(DeviceState.IN_USE)).extracting(Device::getId).containsExactly(id);
+        assertThat(readModel.findByState(DeviceState.AVAILABLE)).isEmpty();
+    }
+
+    @Test
+    void refresh_OlderReadOfDeletedDevice_NotRestored() {
+        Long id = deviceService.createDevice(newDevice("Laptop")).getId();
+        readModel.load();
+        Set<Long> ids = Set.of(id);
+
+        long staleStamp = readModel.beginRefresh();
+        List<DeviceReadModel.Row> stale = readModel.readRows(ids);
+        jdbcTemplate.update("DELETE FROM devices WHERE id = ?", id);
+        long freshStamp = readModel.beginRefresh();
+        readModel.endRefresh(ids, readModel.readRows(ids), freshStamp);
+        readModel.endRefresh(ids, stale, staleStamp);
+
+        assertThat(readModel.findByBrandName("Dell")).isEmpty();
+    }
+
+    private static Device newDevice(String name) {
+        return Device.builder()
+                .name(name)
+                .brand(Brand.builder().name("Dell").build())
+                .state(DeviceState.AVAILABLE)
+                .build();
+    }
+
+    private void write(int thread, int operations) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> mine = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            String brand = BRANDS[random.nextInt(BRANDS.length)];
+            DeviceState state = DeviceState.values()[random.nextInt(DeviceState.values().length)];
+            int operation = mine.isEmpty() ? 0 : random.nextInt(4);
+            if (operation == 0) {
+                mine.add(deviceService.createDevice(Device.builder()
+                        .name("device-" + thread + "-" + i)
+                        .brand(Brand.builder().name(brand).build())
+                        .state(state)
+                        .build()).getId());
+            } else if (operation == 1) {
+                Long id = mine.get(random.nextInt(mine.size()));
+                deviceService.updateDevice(id, DeviceDTO.builder().brand(brand).state(state).build());
+            } else if (operation == 2) {
+                Long id = mine.remove(random.nextInt(mine.size()));
+                try {
+                    deviceService.deleteDevice(id);
+                } catch (ResourceCannotBeDeletedException ex) {
+                    mine.add(id);
+                }
+            } else {
+                stateReports.report(mine.get(random.nextInt(mine.size())), state);
+                stateReports.flush();
+            }
+        }
+    }
+
+    private void assertConsistentWithDatabase() {
+        for (DeviceState state : DeviceState.values()) {
+            assertThat(dtos(readModel.findByState(state)))
+                    .as("devices %s", state)
+                    .containsExactlyInAnyOrderElementsOf(dtos(deviceRepository.findByState(state)));
+        }
+        for (String brand : BRANDS) {
+            assertThat(dtos(readModel.findByBrandName(brand)))
+                    .as("devices of %s", brand)
+                    .containsExactlyInAnyOrderElementsOf(dtos(deviceRepository.findByBrandName(brand)));
+        }
+    }
+
+    private static Set<DeviceDTO> dtos(List<Device> devices) {
+        return devices.stream().map(Device::convertToDTO).collect(Collectors.toSet());
+    }
+}
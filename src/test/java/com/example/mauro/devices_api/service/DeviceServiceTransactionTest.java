@@ -0,0 +1,181 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.exception.ResourceCannotBeDeletedException;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Connections and statements per service call, measured with Hibernate
+ * statistics, and the consistency of concurrent writes on the same device.
+ */
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceServiceTransactionTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void createDevice_OneConnectionPerCall() {
+        statistics.clear();
+        legacyCreateDevice(newDevice("Laptop", "Dell"));
+        long connectionsBefore = statistics.getConnectCount();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        deviceService.createDevice(newDevice("Tablet", "Apple"));
+
+        assertThat(connectionsBefore).as("legacy createDevice, %d statements", statementsBefore).isGreaterThan(1);
+        assertThat(statistics.getConnectCount())
+                .as("createDevice, %d statements", statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void updateDevice_OneConnectionPerCall() {
+        Device device = deviceService.createDevice(newDevice("Laptop", "Dell"));
+        DeviceDTO update = DeviceDTO.builder().name("Laptop 2").brand("Apple").state(DeviceState.IN_USE).build();
+
+        statistics.clear();
+        deviceService.updateDevice(device.getId(), update);
+
+        assertThat(statistics.getConnectCount())
+                .as("updateDevice, %d statements", statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void readPaths_DoNotFlush() {
+        Device device = deviceService.createDevice(newDevice("Laptop", "Dell"));
+
+        statistics.clear();
+        deviceService.getDeviceById(device.getId());
+        deviceService.getDevicesByState(DeviceState.AVAILABLE);
+        deviceService.getDevicesByBrand("Dell");
+        deviceService.getAllDevices();
+
+        assertThat(statistics.getConnectCount())
+                .as("4 reads, %d statements", statistics.getPrepareStatementCount()).isEqualTo(4);
+        assertThat(statistics.getFlushCount()).isZero();
+    }
+
+    @Test
+    void concurrentUpdateAndDelete_NeverDeletesDeviceInUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 50; i++) {
+                Device device = deviceService.createDevice(newDevice("Laptop " + i, "Dell"));
+                Long id = device.getId();
+                DeviceDTO inUse = DeviceDTO.builder().name("Laptop " + i).brand("Dell").state(DeviceState.IN_USE)
+                        .build();
+                CountDownLatch start = new CountDownLatch(1);
+
+                Future<Device> update = executor.submit(() -> {
+                    start.await();
+                    return deviceService.updateDevice(id, inUse);
+                });
+                Future<Boolean> delete = executor.submit(() -> {
+                    start.await();
+                    try {
+                        return deviceService.deleteDevice(id);
+                    } catch (ResourceCannotBeDeletedException ex) {
+                        return false;
+                    }
+                });
+                start.countDown();
+
+                Device updated = update.get();
+                boolean deleted = delete.get();
+
+                // Either the delete won (and the update recreated the device under a new
+                // id) or the update won and the device, now in use, survived
+                if (updated.getId().equals(id)) {
+                    assertThat(deleted).isFalse();
+                    assertThat(deviceRepository.findById(id)).get()
+                            .extracting(Device::getState).isEqualTo(DeviceState.IN_USE);
+                } else {
+                    assertThat(deleted).isTrue();
+                }
+                deviceRepository.deleteAll();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // What createDevice did before it had a transactional boundary: every
+    // repository call checked out its own connection
+    private void legacyCreateDevice(Device device) {
+        deviceRepository.findByName(device.getName());
+        Brand brand = brandRepository.findByName(device.getBrand().getName())
+                .orElseGet(() -> brandRepository.save(device.getBrand()));
+        device.setBrand(brand);
+        deviceRepository.save(device);
+    }
+
+    private static Device newDevice(String name, String brand) {
+        return Device.builder()
+                .name(name)
+                .brand(Brand.builder().name(brand).build())
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build();
+    }
+}
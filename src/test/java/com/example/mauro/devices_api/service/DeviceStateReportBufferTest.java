@@ -0,0 +1,130 @@
+package com.example.mauro.devices_api.service;
+
+import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class DeviceStateReportBufferTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        // Flushes are triggered by the tests
+        registry.add("devices.state-report.flush-interval", () -> "1h");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceStateReportBuffer buffer;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    private List<Device> devices;
+
+    @BeforeEach
+    void setUp() {
+        buffer.flush();
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+
+        Brand brand = brandRepository.save(Brand.builder().name("Dell").build());
+        devices = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            devices.add(deviceRepository.save(Device.builder()
+                    .name("Laptop " + i)
+                    .brand(brand)
+                    .state(DeviceState.AVAILABLE)
+                    .creationTime(LocalDateTime.now())
+                    .build()));
+        }
+    }
+
+    @Test
+    void flush_ManyReports_OneWritePerChangedDevice() {
+        // 10 devices reporting 20 times each, ending IN_USE on odd devices only
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < devices.size(); i++) {
+                DeviceState state = round < 19
+                        ? (round % 2 == 0 ? DeviceState.IN_USE : DeviceState.AVAILABLE)
+                        : (i % 2 == 0 ? DeviceState.AVAILABLE : DeviceState.IN_USE);
+                deviceService.reportState(devices.get(i).getId(), state);
+            }
+        }
+
+        int written = buffer.flush();
+
+        assertThat(written).as("rows written for 200 reports").isEqualTo(5);
+        for (int i = 0; i < devices.size(); i++) {
+            assertThat(deviceRepository.findById(devices.get(i).getId())).get()
+                    .extracting(Device::getState)
+                    .isEqualTo(i % 2 == 0 ? DeviceState.AVAILABLE : DeviceState.IN_USE);
+        }
+    }
+
+    @Test
+    void getDeviceById_PendingReport_SeesReportedState() {
+        Long id = devices.get(0).getId();
+
+        deviceService.reportState(id, DeviceState.INACTIVE);
+
+        assertThat(deviceService.getDeviceById(id)).get()
+                .extracting(Device::getState).isEqualTo(DeviceState.INACTIVE);
+        assertThat(deviceRepository.findById(id)).get()
+                .extracting(Device::getState).isEqualTo(DeviceState.AVAILABLE);
+
+        buffer.flush();
+
+        assertThat(deviceRepository.findById(id)).get()
+                .extracting(Device::getState).isEqualTo(DeviceState.INACTIVE);
+    }
+
+    @Test
+    void updateDevice_AfterReport_IsNotOverwrittenByFlush() {
+        Long id = devices.get(0).getId();
+
+        deviceService.reportState(id, DeviceState.INACTIVE);
+        deviceService.updateDevice(id,
+                DeviceDTO.builder().name("Laptop 0").brand("Dell").state(DeviceState.IN_USE).build());
+        buffer.flush();
+
+        assertThat(deviceRepository.findById(id)).get()
+                .extracting(Device::getState).isEqualTo(DeviceState.IN_USE);
+    }
+}
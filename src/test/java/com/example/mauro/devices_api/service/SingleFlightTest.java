@@ -0,0 +1,80 @@
+package com.example.mauro.devices_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    @Test
+    void execute_ConcurrentCallsSameKey_ShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<Integer> owner = CompletableFuture.supplyAsync(() -> flights.execute("k", () -> {
+            loading.countDown();
+            await(release);
+            return loads.incrementAndGet();
+        }));
+        loading.await();
+        CompletableFuture<Integer> joiner = CompletableFuture.supplyAsync(
+                () -> flights.execute("k", loads::incrementAndGet));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(owner.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(joiner.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(flights.getLoads()).isEqualTo(1);
+        assertThat(flights.getJoins()).isEqualTo(1);
+    }
+
+    @Test
+    void execute_AfterInvalidate_DoesNotJoinOlderCall() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Integer> stale = CompletableFuture.supplyAsync(() -> flights.execute("k", () -> {
+            loading.countDown();
+            await(release);
+            return 1;
+        }));
+        loading.await();
+
+        // A write committed while the first call was running
+        flights.invalidate();
+        int fresh = flights.execute("k", () -> 2);
+        release.countDown();
+
+        assertThat(fresh).isEqualTo(2);
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(flights.getLoads()).isEqualTo(2);
+    }
+
+    @Test
+    void execute_LoaderFails_ExceptionPropagatesAndKeyIsReleased() {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+
+        assertThrows(IllegalStateException.class, () -> flights.execute("k", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertThat(flights.execute("k", () -> 3)).isEqualTo(3);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
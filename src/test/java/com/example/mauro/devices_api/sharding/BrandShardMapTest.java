@@ -0,0 +1,69 @@
+package com.example.mauro.devices_api.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BrandShardMapTest {
+
+    private static final int BRANDS = 20000;
+
+    @Test
+    void shardOfBrand_SpreadsBrandsEvenly() {
+        BrandShardMap map = new BrandShardMap(4, 128, Map.of());
+        int[] counts = new int[4];
+        for (int i = 0; i < BRANDS; i++) {
+            counts[map.shardOfBrand("brand-" + i)]++;
+        }
+        for (int count : counts) {
+            assertThat(count).as("brands per shard %s", Arrays.toString(counts)).isBetween(BRANDS / 4 * 7 / 10, BRANDS / 4 * 13 / 10);
+        }
+    }
+
+    @Test
+    void shardOfBrand_AddingShard_OnlyMovesBrandsToNewShard() {
+        BrandShardMap before = new BrandShardMap(4, 128, Map.of());
+        BrandShardMap after = new BrandShardMap(5, 128, Map.of());
+        int moved = 0;
+        for (int i = 0; i < BRANDS; i++) {
+            String brand = "brand-" + i;
+            int oldShard = before.shardOfBrand(brand);
+            int newShard = after.shardOfBrand(brand);
+            if (oldShard != newShard) {
+                assertThat(newShard).isEqualTo(4);
+                moved++;
+            }
+        }
+        // About a fifth of the brands belong to the new shard, none move between old ones
+        assertThat(moved).isBetween(BRANDS / 5 * 7 / 10, BRANDS / 5 * 13 / 10);
+    }
+
+    @Test
+    void shardOfBrand_PinnedBrand_BypassesRing() {
+        BrandShardMap unpinned = new BrandShardMap(3, 128, Map.of());
+        int hashed = unpinned.shardOfBrand("Dell");
+        int pinnedShard = (hashed + 1) % 3;
+
+        BrandShardMap map = new BrandShardMap(3, 128, Map.of("Dell", pinnedShard));
+
+        assertThat(map.shardOfBrand("Dell")).isEqualTo(pinnedShard);
+        assertThat(map.shardOfBrand("Apple")).isEqualTo(unpinned.shardOfBrand("Apple"));
+    }
+
+    @Test
+    void constructor_PinnedToUnknownShard_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new BrandShardMap(3, 128, Map.of("Dell", 3)));
+    }
+
+    @Test
+    void shardOfId_DecodesFirstIdOfEachShard() {
+        for (int shard = 0; shard < 8; shard++) {
+            assertThat(BrandShardMap.shardOfId(BrandShardMap.firstId(shard))).isEqualTo(shard);
+            assertThat(BrandShardMap.shardOfId(BrandShardMap.firstId(shard) + 1_000_000_000L)).isEqualTo(shard);
+        }
+    }
+}
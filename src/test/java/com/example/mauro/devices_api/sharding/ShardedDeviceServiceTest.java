@@ -0,0 +1,231 @@
+package com.example.mauro.devices_api.sharding;
+
+import com.example.mauro.devices_api.dto.DeviceDTO;
+import com.example.mauro.devices_api.dto.DeviceField;
+import com.example.mauro.devices_api.exception.ResourceAlreadyExistsException;
+import com.example.mauro.devices_api.exception.ResourceCannotBeMovedException;
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.service.DeviceJsonStreamer;
+import com.example.mauro.devices_api.service.DeviceService;
+import com.example.mauro.devices_api.warmup.WarmupProperties;
+import com.example.mauro.devices_api.warmup.WarmupRunner;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Three in-memory H2 databases stand in for the shards. Each shard is read
+ * directly to check where a device was stored.
+ */
+@SpringBootTest(properties = {
+        "devices.sharding.enabled=true",
+        "devices.sharding.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "devices.sharding.shards[0].username=sa",
+        "devices.sharding.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "devices.sharding.shards[1].username=sa",
+        "devices.sharding.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "devices.sharding.shards[2].username=sa",
+        "devices.sharding.brand-shards[Pinned]=2",
+        "spring.jpa.hibernate.ddl-auto=none"
+})
+class ShardedDeviceServiceTest {
+
+    private static final int SHARDS = 3;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceJsonStreamer deviceJsonStreamer;
+
+    @Autowired
+    private DeviceShards deviceShards;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Routed to the shard of the current ShardContext
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+
+    // One brand stored on each shard
+    private final String[] brandOfShard = new String[SHARDS];
+
+    @BeforeEach
+    void setUp() {
+        shards.clear();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(
+                    new DriverManagerDataSource("jdbc:h2:mem:shard" + shard + ";DB_CLOSE_DELAY=-1", "sa", ""));
+            jdbcTemplate.update("DELETE FROM devices");
+            jdbcTemplate.update("DELETE FROM brands");
+            shards.add(jdbcTemplate);
+        }
+        // Brands were deleted behind Hibernate's back
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+
+        for (int i = 0, found = 0; found < SHARDS; i++) {
+            String brand = "Brand-" + i;
+            int shard = deviceShards.shardOfBrand(brand);
+            if (brandOfShard[shard] == null) {
+                brandOfShard[shard] = brand;
+                found++;
+            }
+        }
+    }
+
+    @Test
+    void createDevice_StoredOnBrandShard_IdEncodesShard() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Device created = deviceService.createDevice(newDevice("Device " + shard, brandOfShard[shard]));
+
+            assertThat(BrandShardMap.shardOfId(created.getId())).isEqualTo(shard);
+            assertThat(countDevices(shard, "Device " + shard)).isEqualTo(1);
+            assertThat(deviceService.getDeviceById(created.getId())).get()
+                    .extracting(device -> device.getBrand().getName()).isEqualTo(brandOfShard[shard]);
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertThat(shards.get(shard).queryForObject("SELECT COUNT(*) FROM devices", Integer.class)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void createDevice_PinnedBrand_StoredOnPinnedShard() {
+        Device created = deviceService.createDevice(newDevice("Laptop", "Pinned"));
+
+        assertThat(BrandShardMap.shardOfId(created.getId())).isEqualTo(2);
+        assertThat(countDevices(2, "Laptop")).isEqualTo(1);
+    }
+
+    @Test
+    void createDevice_NameUsedOnOtherShard_Throws() {
+        deviceService.createDevice(newDevice("Laptop", brandOfShard[0]));
+
+        assertThrows(ResourceAlreadyExistsException.class,
+                () -> deviceService.createDevice(newDevice("Laptop", brandOfShard[1])));
+    }
+
+    @Test
+    void listings_FanOutToAllShards() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            ids.add(deviceService.createDevice(newDevice("Available " + shard, brandOfShard[shard])).getId());
+            Device inUse = newDevice("In use " + shard, brandOfShard[shard]);
+            inUse.setState(DeviceState.IN_USE);
+            deviceService.createDevice(inUse);
+        }
+
+        assertThat(deviceService.getAllDevices()).hasSize(2 * SHARDS);
+        assertThat(deviceService.getDevicesByState(DeviceState.AVAILABLE)).extracting(Device::getName)
+                .containsExactly("Available 0", "Available 1", "Available 2");
+        assertThat(deviceService.getDevicesByBrand(brandOfShard[1])).extracting(Device::getName)
+                .containsExactlyInAnyOrder("Available 1", "In use 1");
+        assertThat(deviceService.getDevicesByBrandAndState(brandOfShard[2], DeviceState.IN_USE))
+                .extracting(Device::getName).containsExactly("In use 2");
+        assertThat(deviceService.getDevicesByIds(ids)).extracting(Device::getName)
+                .containsExactlyInAnyOrder("Available 0", "Available 1", "Available 2");
+        assertThat(deviceService.getAllDevices(EnumSet.of(DeviceField.ID, DeviceField.NAME))).hasSize(2 * SHARDS);
+        assertThat(deviceService.getDevicesByState(DeviceState.IN_USE, EnumSet.of(DeviceField.NAME)))
+                .hasSize(SHARDS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        deviceJsonStreamer.writeAll(out);
+        JsonNode streamed = objectMapper.readTree(out.toByteArray());
+        assertThat(streamed).hasSize(2 * SHARDS);
+    }
+
+    @Test
+    void updateAndDelete_RoutedById() {
+        Device created = deviceService.createDevice(newDevice("Laptop", brandOfShard[1]));
+
+        deviceService.updateDevice(created.getId(),
+                DeviceDTO.builder().name("Notebook").brand(brandOfShard[1]).state(DeviceState.INACTIVE).build());
+        assertThat(shards.get(1).queryForObject("SELECT state FROM devices WHERE name = 'Notebook'", String.class))
+                .isEqualTo("INACTIVE");
+
+        assertThat(deviceService.deleteDevice(created.getId())).isTrue();
+        assertThat(countDevices(1, "Notebook")).isZero();
+    }
+
+    @Test
+    void updateDevice_BrandOnOtherShard_Throws() {
+        Device created = deviceService.createDevice(newDevice("Laptop", brandOfShard[0]));
+
+        assertThrows(ResourceCannotBeMovedException.class, () -> deviceService.updateDevice(created.getId(),
+                DeviceDTO.builder().brand(brandOfShard[1]).state(DeviceState.AVAILABLE).build()));
+        assertThat(countDevices(0, "Laptop")).isEqualTo(1);
+    }
+
+    @Test
+    void updateDevice_MissingId_CreatedOnBrandShard() {
+        long missingId = BrandShardMap.firstId(0) + 1000;
+
+        Device created = deviceService.updateDevice(missingId,
+                DeviceDTO.builder().name("Phone").brand(brandOfShard[2]).state(DeviceState.AVAILABLE).build());
+
+        assertThat(BrandShardMap.shardOfId(created.getId())).isEqualTo(2);
+        assertThat(countDevices(2, "Phone")).isEqualTo(1);
+    }
+
+    @Test
+    void misplacedBrands_BrandOnOtherShard_Reported() {
+        shards.get(0).update("INSERT INTO brands (name) VALUES (?)", brandOfShard[0]);
+        shards.get(0).update("INSERT INTO brands (name) VALUES (?)", brandOfShard[1]);
+
+        assertThat(ShardingConfig.ShardedDataSourceConfig.misplacedBrands(shards.get(0).getDataSource(), 0,
+                deviceShards)).singleElement().asString().startsWith(brandOfShard[1] + " ");
+        assertThat(ShardingConfig.ShardedDataSourceConfig.misplacedBrands(shards.get(1).getDataSource(), 1,
+                deviceShards)).isEmpty();
+    }
+
+    @Test
+    void warmUp_NoDevicesOnFirstShard_SamplesOtherShards() {
+        deviceService.createDevice(newDevice("Laptop", brandOfShard[1]));
+        deviceService.createDevice(newDevice("Phone", brandOfShard[2]));
+        WarmupProperties properties = new WarmupProperties();
+        properties.setIterations(10);
+
+        WarmupRunner runner = new WarmupRunner(properties, deviceService, deviceJsonStreamer,
+                jdbcTemplate, deviceShards, objectMapper, meterRegistry);
+
+        assertThat(runner.warmUp()).isEqualTo(10);
+    }
+
+    private int countDevices(int shard, String name) {
+        return shards.get(shard).queryForObject("SELECT COUNT(*) FROM devices WHERE name = ?", Integer.class, name);
+    }
+
+    private static Device newDevice(String name, String brand) {
+        return Device.builder()
+                .name(name)
+                .brand(Brand.builder().name(brand).build())
+                .state(DeviceState.AVAILABLE)
+                .build();
+    }
+}
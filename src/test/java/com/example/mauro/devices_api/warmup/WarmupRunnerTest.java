@@ -0,0 +1,159 @@
+package com.example.mauro.devices_api.warmup;
+
+import com.example.mauro.devices_api.model.Brand;
+import com.example.mauro.devices_api.model.Device;
+import com.example.mauro.devices_api.model.DeviceState;
+import com.example.mauro.devices_api.repository.BrandRepository;
+import com.example.mauro.devices_api.repository.DeviceRepository;
+import com.example.mauro.devices_api.service.DeviceJsonStreamer;
+import com.example.mauro.devices_api.service.DeviceService;
+import com.example.mauro.devices_api.sharding.DeviceShards;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class WarmupRunnerTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("restapi")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "update");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("devices.warmup.enabled", () -> "false");
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceJsonStreamer deviceJsonStreamer;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeviceShards deviceShards;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private WarmupProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository.deleteAll();
+        brandRepository.deleteAll();
+        properties = new WarmupProperties();
+        properties.setIterations(50);
+    }
+
+    @Test
+    void warmUp_RunsIterationsWithoutWrites() {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        for (int i = 0; i < 10; i++) {
+            deviceRepository.save(Device.builder()
+                    .name("Laptop " + i)
+                    .brand(dell)
+                    .state(DeviceState.values()[i % DeviceState.values().length])
+                    .creationTime(LocalDateTime.now())
+                    .build());
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        WarmupRunner runner = newRunner();
+        long warmUps = meterRegistry.get("devices.warmup.duration").timer().count();
+
+        assertThat(runner.warmUp()).isEqualTo(50);
+
+        assertThat(statistics.getEntityInsertCount()).isZero();
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(statistics.getEntityDeleteCount()).isZero();
+        assertThat(meterRegistry.get("devices.warmup.duration").timer().count()).isEqualTo(warmUps + 1);
+    }
+
+    @Test
+    void warmUp_StopsAtMaxDuration() {
+        Brand dell = brandRepository.save(Brand.builder().name("Dell").build());
+        deviceRepository.save(Device.builder()
+                .name("Laptop")
+                .brand(dell)
+                .state(DeviceState.AVAILABLE)
+                .creationTime(LocalDateTime.now())
+                .build());
+        properties.setIterations(Integer.MAX_VALUE);
+        properties.setMaxDuration(Duration.ofMillis(500));
+
+        long start = System.nanoTime();
+        assertThat(newRunner().warmUp()).isPositive();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void warmUp_NoDevices_Skipped() {
+        assertThat(newRunner().warmUp()).isZero();
+    }
+
+    @Test
+    void warmUp_SamplingFails_StartupNotFailed() {
+        JdbcTemplate failing = mock(JdbcTemplate.class);
+        when(failing.queryForList(anyString(), eq(Long.class), any(Object[].class)))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+
+        WarmupRunner runner = new WarmupRunner(properties, deviceService, deviceJsonStreamer, failing, deviceShards,
+                objectMapper, meterRegistry);
+
+        assertThat(runner.warmUp()).isZero();
+    }
+
+    private WarmupRunner newRunner() {
+        return new WarmupRunner(properties, deviceService, deviceJsonStreamer, jdbcTemplate, deviceShards,
+                objectMapper, meterRegistry);
+    }
+}